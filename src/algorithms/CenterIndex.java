@@ -0,0 +1,130 @@
+package algorithms;
+
+/**
+ * Static 2-dimensional KD-tree over a set of K-Means centers, rebuilt from the center columns whenever they move.
+ *
+ * The tree is implicit: the centers are copied in an order where every range [from, to) holds its splitting
+ * center at the middle, smaller coordinates of the level's axis before it and greater or equal ones after it.
+ * Levels alternate between splitting on x (even depth) and y (odd depth). A nearest center query visits about
+ * log(K) centers when the points are close to their centers, instead of all K.
+ */
+class CenterIndex {
+	private final int numCenters;
+	private final double[] x, y;	// Center coordinates in tree order
+	private final int[] center;		// Center index of every tree position
+
+	/**
+	 * @param numCenters
+	 */
+	CenterIndex(int numCenters) {
+		this.numCenters = numCenters;
+		this.x = new double[numCenters];
+		this.y = new double[numCenters];
+		this.center = new int[numCenters];
+	}
+
+	/**
+	 * Rebuild the tree over the current center positions.
+	 * @param centerX
+	 * @param centerY
+	 */
+	void build(double[] centerX, double[] centerY) {
+		for (int c = 0; c < numCenters; c++) {
+			x[c] = centerX[c];
+			y[c] = centerY[c];
+			center[c] = c;
+		}
+		build(0, numCenters, 0);
+	}
+
+	private void build(int from, int to, int depth) {
+		if (to - from <= 1)
+			return;
+		int middle = (from + to) >>> 1;
+		select(from, to - 1, middle, (depth & 1) == 0 ? x : y);
+		build(from, middle, depth + 1);
+		build(middle + 1, to, depth + 1);
+	}
+
+	/**
+	 * Quickselect: reorder [lo, hi] so that position k holds the center of rank k by the given coordinate.
+	 */
+	private void select(int lo, int hi, int k, double[] coordinate) {
+		while (lo < hi) {
+			double pivot = coordinate[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (coordinate[i] < pivot)
+					i++;
+				while (coordinate[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(i++, j--);
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double tmpX = x[i], tmpY = y[i];
+		int tmpCenter = center[i];
+		x[i] = x[j];
+		y[i] = y[j];
+		center[i] = center[j];
+		x[j] = tmpX;
+		y[j] = tmpY;
+		center[j] = tmpCenter;
+	}
+
+	/**
+	 * Nearest center search state. Every thread uses its own query.
+	 */
+	class Query {
+		int nearest;			// Center index of the nearest center found
+		double squaredDistance;
+		long distances = 0;		// Number of point-center distances evaluated by this query so far
+
+		/**
+		 * Find the nearest center to (px, py), ties going to the smallest center index.
+		 * @param px
+		 * @param py
+		 * @return index of the nearest center
+		 */
+		int find(double px, double py) {
+			nearest = -1;
+			squaredDistance = Double.MAX_VALUE;
+			search(0, numCenters, 0, px, py);
+			return nearest;
+		}
+
+		private void search(int from, int to, int depth, double px, double py) {
+			while (from < to) {
+				int middle = (from + to) >>> 1;
+				double dx = px - x[middle], dy = py - y[middle];
+				double dist = dx * dx + dy * dy;
+				distances++;
+				if (dist < squaredDistance || (dist == squaredDistance && center[middle] < nearest)) {
+					squaredDistance = dist;
+					nearest = center[middle];
+				}
+				// Search the side of the point first, then the other side only if the splitting line is within reach
+				double delta = (depth & 1) == 0 ? dx : dy;
+				depth++;
+				if (delta < 0) {
+					search(from, middle, depth, px, py);
+					from = middle + 1;
+				} else {
+					search(middle + 1, to, depth, px, py);
+					to = middle;
+				}
+				if (delta * delta > squaredDistance)
+					return;
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package algorithms;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of one clustering algorithm, registered as the MBean "clustering:type=ClusteringMetrics,name=<algorithm>"
+ * on the platform MBean server.
+ *
+ * An iteration is a K-Means assignment and update, a mini-batch step, a single Mean Shift shift or a whole
+ * cluster() run, and a KNN classification of one or many queries. Labelled points count as reassigned for Mean
+ * Shift and KNN; KNN does not count its distance evaluations, which happen inside the KD-tree. Allocated bytes are
+ * those of the thread driving the algorithm and of every fork/join worker thread, so they include the parallel
+ * loops of the phase but also whatever other work the workers ran meanwhile. Every phase is also reported as a ClusteringPhaseEvent
+ * to Flight Recorder and logged at level FINE, which is off by default.
+ */
+public class ClusteringMetrics implements ClusteringMetricsMBean {
+	private static final Logger LOGGER = Logger.getLogger(ClusteringMetrics.class.getName());
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static final ClusteringMetrics KMEANS = register("kmeans");
+	public static final ClusteringMetrics MINI_BATCH_KMEANS = register("minibatch");
+	public static final ClusteringMetrics MEAN_SHIFT = register("meanshift");
+	public static final ClusteringMetrics KNN = register("knn");
+
+	private final String algorithm;
+	private final LongAdder iterations = new LongAdder(), iterationNanos = new LongAdder();
+	private final LongAdder distanceEvaluations = new LongAdder(), pointsReassigned = new LongAdder();
+	private final LongAdder framesBuilt = new LongAdder(), bytesAllocated = new LongAdder();
+	private volatile long lastIterationNanos = 0;
+	private volatile double lastSse = Double.NaN;
+
+	private ClusteringMetrics(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	private static ClusteringMetrics register(String algorithm) {
+		ClusteringMetrics metrics = new ClusteringMetrics(algorithm);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName("clustering:type=ClusteringMetrics,name=" + algorithm));
+		} catch (JMException e) {
+			LOGGER.log(Level.WARNING, "Cannot register the " + algorithm + " metrics MBean", e);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Start a phase on the current thread: its time, and the allocations of this thread and the fork/join
+	 * workers, are measured until Phase.end().
+	 * @param phase - name of the phase, such as "assign"
+	 * @param iteration - iteration, step or frame the phase belongs to
+	 * @return phase
+	 */
+	public Phase begin(String phase, int iteration) {
+		return new Phase(phase, iteration);
+	}
+
+	/**
+	 * Count one iteration.
+	 * @param nanos - wall time of the iteration
+	 * @param distances - distance evaluations
+	 * @param reassigned - points whose label changed
+	 * @param sse - sum of squared distances to the assigned centers, NaN if not applicable
+	 * @param allocated - bytes allocated, negative if unknown
+	 */
+	public void recordIteration(long nanos, long distances, long reassigned, double sse, long allocated) {
+		iterations.increment();
+		iterationNanos.add(nanos);
+		distanceEvaluations.add(distances);
+		pointsReassigned.add(reassigned);
+		if (allocated > 0)
+			bytesAllocated.add(allocated);
+		lastIterationNanos = nanos;
+		lastSse = sse;
+	}
+
+	/**
+	 * Count animation frames built.
+	 * @param frames
+	 */
+	public void recordFrames(int frames) {
+		framesBuilt.add(frames);
+	}
+
+	/**
+	 * Get the ids of the current thread and of all live fork/join worker threads, sorted.
+	 * @return thread ids
+	 */
+	private static long[] measuredThreadIds() {
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while (root.getParent() != null)
+			root = root.getParent();
+		Thread[] threads = new Thread[root.activeCount() + 16];
+		int count;
+		while ((count = root.enumerate(threads)) == threads.length)
+			threads = new Thread[threads.length * 2];
+		long[] ids = new long[count + 1];
+		int measured = 0;
+		ids[measured++] = Thread.currentThread().getId();
+		for (int i = 0; i < count; i++) {
+			if (threads[i] instanceof ForkJoinWorkerThread && threads[i] != Thread.currentThread())
+				ids[measured++] = threads[i].getId();
+		}
+		ids = Arrays.copyOf(ids, measured);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * Get the number of bytes allocated so far by each of the given threads.
+	 * @param ids - thread ids
+	 * @return bytes per thread, -1 for a thread that is no longer alive, or null if the JVM does not measure
+	 * allocations
+	 */
+	private static long[] threadAllocatedBytes(long[] ids) {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(ids);
+		}
+		return null;
+	}
+
+	@Override
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	@Override
+	public long getIterations() {
+		return iterations.sum();
+	}
+
+	@Override
+	public double getTotalIterationTimeMillis() {
+		return iterationNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getLastIterationTimeMillis() {
+		return lastIterationNanos / 1e6;
+	}
+
+	@Override
+	public long getDistanceEvaluations() {
+		return distanceEvaluations.sum();
+	}
+
+	@Override
+	public long getPointsReassigned() {
+		return pointsReassigned.sum();
+	}
+
+	@Override
+	public double getLastSse() {
+		return lastSse;
+	}
+
+	@Override
+	public long getFramesBuilt() {
+		return framesBuilt.sum();
+	}
+
+	@Override
+	public long getBytesAllocated() {
+		return bytesAllocated.sum();
+	}
+
+	@Override
+	public void reset() {
+		iterations.reset();
+		iterationNanos.reset();
+		distanceEvaluations.reset();
+		pointsReassigned.reset();
+		framesBuilt.reset();
+		bytesAllocated.reset();
+		lastIterationNanos = 0;
+		lastSse = Double.NaN;
+	}
+
+	/**
+	 * A running phase, timed on the thread that began it. Its allocations are summed over that thread and the
+	 * fork/join workers; a worker that exits during the phase loses its share, one started during it counts in full.
+	 */
+	public class Phase {
+		private final ClusteringPhaseEvent event = new ClusteringPhaseEvent();
+		private final String name;
+		private final int iteration;
+		private final long startNanos;
+		private final long[] startThreads, startAllocated;
+		private long nanos, allocated;
+
+		private Phase(String name, int iteration) {
+			this.name = name;
+			this.iteration = iteration;
+			this.startThreads = measuredThreadIds();
+			this.startAllocated = threadAllocatedBytes(startThreads);
+			this.startNanos = System.nanoTime();
+			event.begin();
+		}
+
+		/**
+		 * End the phase, report it to Flight Recorder and log it.
+		 * @param distances - distance evaluations of the phase
+		 * @param reassigned - points whose label changed
+		 * @param sse - sum of squared distances to the assigned centers, NaN if not applicable
+		 * @return this phase
+		 */
+		public Phase end(long distances, long reassigned, double sse) {
+			event.end();
+			nanos = System.nanoTime() - startNanos;
+			allocated = allocatedSinceStart();
+			if (event.shouldCommit()) {
+				event.algorithm = algorithm;
+				event.phase = name;
+				event.iteration = iteration;
+				event.distanceEvaluations = distances;
+				event.pointsReassigned = reassigned;
+				event.sse = sse;
+				event.allocatedBytes = allocated;
+				event.commit();
+			}
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine(String.format("%s %s #%d: %.3f ms, %d distances, %d reassigned, SSE %.6g, %d bytes allocated",
+						algorithm, name, iteration, nanos / 1e6, distances, reassigned, sse, allocated));
+			}
+			return this;
+		}
+
+		/**
+		 * End the phase and count it as one iteration.
+		 * @param distances
+		 * @param reassigned
+		 * @param sse
+		 */
+		public void endIteration(long distances, long reassigned, double sse) {
+			end(distances, reassigned, sse);
+			recordIteration(nanos, distances, reassigned, sse, allocated);
+		}
+
+		/**
+		 * Sum the bytes allocated by the measured threads since the phase began.
+		 * @return bytes, or -1 if the JVM does not measure allocations
+		 */
+		private long allocatedSinceStart() {
+			if (startAllocated == null)
+				return -1;
+			long[] threads = measuredThreadIds();
+			long[] bytes = threadAllocatedBytes(threads);
+			if (bytes == null)
+				return -1;
+			long sum = 0;
+			for (int i = 0; i < threads.length; i++) {
+				if (bytes[i] < 0)
+					continue;	// Exited meanwhile
+				int start = Arrays.binarySearch(startThreads, threads[i]);
+				long before = start < 0 || startAllocated[start] < 0 ? 0 : startAllocated[start];	// New threads count in full
+				sum += Math.max(0, bytes[i] - before);
+			}
+			return sum;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocated;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package algorithms;
+
+/**
+ * Management interface of ClusteringMetrics, one MBean per algorithm.
+ */
+public interface ClusteringMetricsMBean {
+	String getAlgorithm();
+
+	long getIterations();
+
+	double getTotalIterationTimeMillis();
+
+	double getLastIterationTimeMillis();
+
+	long getDistanceEvaluations();
+
+	long getPointsReassigned();
+
+	/**
+	 * @return sum of squared distances to the assigned centers after the last iteration, NaN if not applicable
+	 */
+	double getLastSse();
+
+	long getFramesBuilt();
+
+	long getBytesAllocated();
+
+	/**
+	 * Reset every counter to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,44 @@
+package algorithms;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one phase of a clustering algorithm, such as a K-Means assignment or the drawing
+ * of an animation frame. Disabled events cost a flag check, so phases are always instrumented.
+ */
+@Name("clustering.Phase")
+@Label("Clustering Phase")
+@Category("Clustering")
+@Description("One phase of a clustering algorithm")
+@StackTrace(false)
+public class ClusteringPhaseEvent extends jdk.jfr.Event {
+	@Label("Algorithm")
+	public String algorithm;
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Iteration")
+	@Description("Iteration, step or frame the phase belongs to")
+	public int iteration;
+
+	@Label("Distance Evaluations")
+	public long distanceEvaluations;
+
+	@Label("Points Reassigned")
+	public long pointsReassigned;
+
+	@Label("SSE")
+	@Description("Sum of squared distances to the assigned centers, NaN if not applicable")
+	public double sse = Double.NaN;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the thread that ran the phase and the fork/join workers")
+	@DataAmount
+	public long allocatedBytes;
+}
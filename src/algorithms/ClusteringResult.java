@@ -0,0 +1,42 @@
+package algorithms;
+
+/**
+ * Outcome of a headless clustering run: a label for every point of the input and the cluster centers.
+ * Label i refers to center i.
+ */
+public class ClusteringResult {
+	private final int[] labels;
+	private final double[] centerX, centerY;
+	private final int iterations;
+
+	public ClusteringResult(int[] labels, double[] centerX, double[] centerY, int iterations) {
+		this.labels = labels;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.iterations = iterations;
+	}
+
+	public int[] getLabels() {
+		return labels;
+	}
+
+	public double[] getCenterX() {
+		return centerX;
+	}
+
+	public double[] getCenterY() {
+		return centerY;
+	}
+
+	public int getNumClusters() {
+		return centerX.length;
+	}
+
+	/**
+	 * Get the number of iterations run. For Mean Shift this is the largest number of shifts of a single seed.
+	 * @return iterations
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+}
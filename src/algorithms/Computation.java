@@ -0,0 +1,60 @@
+package algorithms;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Handle of a computation running in the background: it carries progress reports to a listener and a cancellation
+ * request that the computation checks between its steps.
+ */
+public class Computation {
+	/**
+	 * Receives progress reports, on the thread running the computation.
+	 */
+	public interface Listener {
+		/**
+		 * @param message - what the computation is doing
+		 * @param fraction - estimated fraction done between 0 and 1, or -1 if unknown
+		 */
+		void progress(String message, double fraction);
+	}
+
+	private final Listener listener;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param listener - receives progress reports, may be null
+	 */
+	public Computation(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Ask the computation to stop at its next check.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stop the computation if it was cancelled.
+	 * @throws CancellationException - if cancel() was called
+	 */
+	public void checkCancelled() {
+		if (cancelled)
+			throw new CancellationException();
+	}
+
+	/**
+	 * Report progress to the listener.
+	 * @param message
+	 * @param fraction - between 0 and 1, or -1 if unknown
+	 */
+	public void progress(String message, double fraction) {
+		if (listener != null)
+			listener.progress(message, fraction);
+	}
+}
@@ -0,0 +1,51 @@
+package algorithms;
+
+/**
+ * Distance between 2-dimensional points, computed from a query to blocks of primitive coordinate columns so that
+ * implementations can process several points per instruction. Get instances from DistanceKernels.
+ */
+public interface DistanceKernel {
+	/**
+	 * Distance metrics.
+	 */
+	enum Metric {
+		EUCLIDEAN,
+		SQUARED_EUCLIDEAN,	// Same order as EUCLIDEAN without the square root
+		MANHATTAN,
+		COSINE				// 1 - cosine of the angle between the position vectors, 1 if either is zero
+	}
+
+	Metric metric();
+
+	/**
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @return distance between (ax, ay) and (bx, by)
+	 */
+	double distance(double ax, double ay, double bx, double by);
+
+	/**
+	 * Compute the distances from a query to the points [from, to) of the columns.
+	 * @param qx
+	 * @param qy
+	 * @param x
+	 * @param y
+	 * @param from
+	 * @param to
+	 * @param out - receives the distance to point i at out[i - from]
+	 */
+	void distances(double qx, double qy, double[] x, double[] y, int from, int to, double[] out);
+
+	/**
+	 * Find the nearest of the first count points of the columns, ties going to the smallest index.
+	 * @param qx
+	 * @param qy
+	 * @param x
+	 * @param y
+	 * @param count
+	 * @return index of the nearest point, or -1 if count is 0
+	 */
+	int nearest(double qx, double qy, double[] x, double[] y, int count);
+}
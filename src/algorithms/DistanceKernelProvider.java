@@ -0,0 +1,12 @@
+package algorithms;
+
+/**
+ * Service that supplies accelerated distance kernels, found with java.util.ServiceLoader.
+ */
+public interface DistanceKernelProvider {
+	/**
+	 * @param metric
+	 * @return kernel for the metric, or null if the provider cannot accelerate it on this machine
+	 */
+	DistanceKernel get(DistanceKernel.Metric metric);
+}
@@ -0,0 +1,73 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the distance kernels. Kernels of the DistanceKernelProvider services on the class path are preferred,
+ * the scalar kernels are used for the metrics no provider accelerates. The vectorized provider in the vector source
+ * folder needs the jdk.incubator.vector module; without it the scalar kernels are used. Setting the system
+ * property clustering.scalarKernels to true ignores the providers.
+ */
+public class DistanceKernels {
+	private static final Logger LOGGER = Logger.getLogger(DistanceKernels.class.getName());
+	private static final Map<DistanceKernel.Metric, DistanceKernel> KERNELS = load();
+
+	/**
+	 * Get the preferred kernel of a metric.
+	 * @param metric
+	 * @return kernel
+	 */
+	public static DistanceKernel get(DistanceKernel.Metric metric) {
+		return KERNELS.get(metric);
+	}
+
+	/**
+	 * Get the plain Java kernel of a metric.
+	 * @param metric
+	 * @return kernel
+	 */
+	public static DistanceKernel scalar(DistanceKernel.Metric metric) {
+		return new ScalarDistanceKernel(metric);
+	}
+
+	private static Map<DistanceKernel.Metric, DistanceKernel> load() {
+		List<DistanceKernelProvider> providers = new ArrayList<>();
+		if (!Boolean.getBoolean("clustering.scalarKernels")) {
+			Iterator<DistanceKernelProvider> iterator = ServiceLoader.load(DistanceKernelProvider.class).iterator();
+			while (true) {
+				try {
+					if (!iterator.hasNext())
+						break;
+					providers.add(iterator.next());
+				} catch (ServiceConfigurationError | LinkageError e) {
+					// Typically a provider compiled against a module missing at run time
+					LOGGER.log(Level.FINE, "Distance kernel provider unavailable", e);
+				}
+			}
+		}
+		Map<DistanceKernel.Metric, DistanceKernel> kernels = new EnumMap<>(DistanceKernel.Metric.class);
+		for (DistanceKernel.Metric metric : DistanceKernel.Metric.values()) {
+			DistanceKernel kernel = null;
+			for (DistanceKernelProvider provider : providers) {
+				try {
+					kernel = provider.get(metric);
+				} catch (LinkageError e) {
+					LOGGER.log(Level.FINE, "Distance kernel provider unavailable", e);
+				}
+				if (kernel != null)
+					break;
+			}
+			kernels.put(metric, kernel != null ? kernel : scalar(metric));
+			LOGGER.fine("Distance kernel for " + metric + ": " + kernels.get(metric).getClass().getName());
+		}
+		return kernels;
+	}
+}
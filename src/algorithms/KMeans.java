@@ -1,206 +1,107 @@
 package algorithms;
 
-import graph.Node;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.ArrayList;
+import java.util.logging.Logger;
+
 import graph.Graph;
 import graph.NodeCategories;
-import graphics.Animation;
+import graph.PointStore;
 import graphics.Brush;
-import javafx.animation.KeyFrame;
-import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
-import javafx.scene.paint.Color;
-import javafx.util.Duration;
+import graphics.PlaybackAnimation;
+import javafx.application.Platform;
 
-public class KMeans implements Animation {
+public class KMeans extends PlaybackAnimation {
+	private static final Logger LOGGER = Logger.getLogger(KMeans.class.getName());
 	private Brush brush;
-	private Timeline timeline;
+	private Graph graph;
+	private int centerNum;
+	private long seed;
+	private StepLog stepLog;
 	
 	public KMeans() {
-		//Empty
+		super("K-Means Clustering", ClusteringMetrics.KMEANS);
 	}
 	
 	public KMeans(int centerNum, Graph graph, Brush brush) {
-		this.timeline = new Timeline();
-		this.brush = brush;
-		KMeansClustering(graph, centerNum);
+		this(centerNum, graph, brush, new Random().nextLong());
 	}
-
-	@Override
 	
-	public void start() {
-		this.timeline.play();
-		System.out.println("[INFO] Start K-Means Clustering animation");
-	}
-
-	@Override
-	public void pause() {
-		this.timeline.pause();
-		System.out.println("[INFO] Pause K-Means Clustering animation");
+	/**
+	 * @param centerNum
+	 * @param graph
+	 * @param brush
+	 * @param seed - seed of the initial centers, the same seed on the same graph gives the same run
+	 */
+	public KMeans(int centerNum, Graph graph, Brush brush, long seed) {
+		super("K-Means Clustering", ClusteringMetrics.KMEANS);
+		this.brush = brush;
+		this.graph = graph;
+		this.centerNum = centerNum;
+		this.seed = seed;
 	}
 
 	@Override
-	public void resume() {
-		this.timeline.play();
-		System.out.println("[INFO] Resume K-Means Clustering animation");
-	}
-	
-	@Override
-	public void stop() {
-		this.timeline.stop();
-		this.brush.clear();
-		System.out.println("[INFO] Stop K-Means Clustering animation");
+	protected void compute(Computation computation) {
+		KMeansClustering(graph, centerNum, computation);
 	}
 
+	/**
+	 * Draw a recorded step, every frame is rebuilt from the step log.
+	 */
 	@Override
-	public void previous() {
-		this.timeline.pause();
-		double previousTime = Math.floor(this.timeline.getCurrentTime().toSeconds()) - 1;
-		if (previousTime < 0) {
+	protected void renderFrame(int frame) {
+		if (frame < 0)
 			this.brush.clear();
-		} else {
-			this.timeline.playFrom(Duration.seconds(previousTime));
-			PauseTransition pause = new PauseTransition(Duration.seconds(1));
-	        pause.setOnFinished((pauseEvent) -> {
-	        	this.timeline.pause();
-	        });
-	        pause.play();
-		}
-		System.out.println("[INFO] Previous step in K-Means Clustering animation");
+		else
+			this.stepLog.render(frame, this.brush);
 	}
-
+	
 	@Override
-	public void next() {
-		this.timeline.pause();
-		double nextTime = Math.ceil(this.timeline.getCurrentTime().toSeconds());
-		this.timeline.playFrom(Duration.seconds(nextTime));
-		PauseTransition pause = new PauseTransition(Duration.seconds(0.5));
-        pause.setOnFinished((pauseEvent) -> {
-        	this.timeline.pause();
-        });
-        pause.play();
-		System.out.println("[INFO] Next step in K-Means Clustering animation");
+	public long getRetainedBytes() {
+		StepLog log = this.stepLog;
+		return log == null ? 0 : log.getRetainedBytes();
 	}
 	
-	public void KMeansClustering(Graph graph, int centerNum) {
-		ArrayList<Node> categorizedNodes = new ArrayList<>();
-		ArrayList<Node> centers = new ArrayList<>();
-		ArrayList<Node> newcenters = new ArrayList<>();
-		ArrayList<Node> categorizedNodescopy = new ArrayList<>();
-		double timeBetweenFrames = 0;
+	public void KMeansClustering(Graph graph, int centerNum, Computation computation) {
+		PointStore points = graph.getPoints();
+		int numNodes = points.size();
+		double[] nodeX = points.xs(), nodeY = points.ys();	// Read the coordinate columns in place
+		int[] labels = new int[numNodes];
+		double[] centerX = new double[centerNum], centerY = new double[centerNum];
 		
-		this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-			this.brush.clear();
-		}));
+		Arrays.fill(labels, NodeCategories.UNCATEGORIZED);	//Start by set all nodes to uncategorized
 
-		for (Node node: graph.getCategorizedNodes()) {
-			categorizedNodes.add(new Node(node.getX(), node.getY(), Color.BLACK)); //Start by set all color of nodes to black (which is uncategorized yet)
-			this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-					this.brush.drawPoint(node.getX(), node.getY(), Color.BLACK);
-			}));
-		}
-
-		// Generate random centroids
-		Random rand = new Random();
-		for (int i = 0; i < centerNum; i++) {
-			// Create a new center at random location with Color at index i from NodeCategories
-			Node node = new Node(rand.nextDouble()*1000, rand.nextDouble()*650, NodeCategories.getColor(i));
-			centers.add(node);	// Add that center to ArrayList
-			this.brush.drawCenter(node.getX(), node.getY(), node.getCategory());
-		}
-		
-		timeBetweenFrames = 1;
+		// Seed the centroids from the data, center i is drawn with Color at index i from NodeCategories
+		computation.progress("K-Means: seeding " + centerNum + " centers", -1);
+		KMeansSeeding.seed(points, centerNum, seed, centerX, centerY);
+		computation.checkCancelled();
+		this.stepLog = new StepLog(nodeX, nodeY, numNodes, centerNum);
+		this.stepLog.record(labels, centerX, centerY);	// Step 0: uncategorized nodes with initial centers
+		publishFrames(1);
+		Platform.runLater(() -> {
+			if (this.player.getFrame() < 0 && !this.player.isPlaying())
+				this.stepLog.render(0, this.brush);
+		});
 
+		KMeansEngine engine = new KMeansEngine(points, centerX, centerY);
+		engine.setMode(KMeansEngine.acceleratedMode(centerNum));
 		for (int iteration = 0; iteration < 100; iteration++) {
-			double SSE = Double.MAX_VALUE;
+			computation.checkCancelled();
 			// Assign each node to the nearest centroid
-			this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-				this.brush.clear();
-			}));
-			categorizedNodescopy.clear();
-			for (Node node: categorizedNodes) {
-				double minDist = Double.MAX_VALUE;			// minDist stores minimum distance from one node to center
-				Node nearest = null;
-				for (Node center: centers) {
-					double dist = distance(node, center);	// Calculate distance from one node to center
-					if (dist < minDist) {
-						nearest = center;					// Assign color of nearest center to that node
-						minDist = dist;						// Re-assign minDist if current distance < minDist
-					}
-				}
-				node.setCategory(nearest.getCategory());
-				categorizedNodescopy.add(new Node(node.getX(), node.getY(), node.getCategory()));
-				final Node nodecopy = categorizedNodescopy.get(categorizedNodescopy.size()-1);
-				this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-					this.brush.drawPoint(nodecopy.getX(), nodecopy.getY(), nodecopy.getCategory());				//Print categorized Nodes
-				}));
-			}
-			for (Node center: centers) {
-				this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-					this.brush.drawCenter(center.getX(), center.getY(), center.getCategory());
-				}));
-			}
-		
+			engine.assign();
+			this.stepLog.record(engine.getLabels(), engine.getCenterX(), engine.getCenterY());
 			// Shift centroids to average of their clusters
-			this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames + 1), (event) -> {
-				this.brush.clear();			//Clear everything
-			}));
-			int count;
-			long sumx, sumy;
-			categorizedNodescopy.clear();
-			for (Node node: categorizedNodes) {				//Print categorized Nodes
-				categorizedNodescopy.add(new Node(node.getX(), node.getY(), node.getCategory()));
-				final Node nodecopy = categorizedNodescopy.get(categorizedNodescopy.size()-1);
-				this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames + 1), (event) -> {
-					this.brush.drawPoint(nodecopy.getX(), nodecopy.getY(), nodecopy.getCategory());
-				}));
-			}
-			newcenters.clear();
-			for (Node center: centers) {
-				count = 0;										// Count number of node having same color as center i
-				sumx = 0; sumy = 0;								// Sum of coordinates in x and y axis
-				for (Node node: categorizedNodes) {
-					if (center.getCategory().equals(node.getCategory())) {	// Check if center and node have same color
-						count++;
-						sumx += node.getX();
-						sumy += node.getY();
-					}
-				}
-				if (count != 0) {
-					newcenters.add(new Node(sumx/count, sumy/count, center.getCategory()));				// Update centers that has nodes with same color
-				} else {
-					newcenters.add(new Node(center.getX(), center.getY(), center.getCategory()));		// Do not change coordinate of center has no node with same color
-				}
-				final Node centerCopy = newcenters.get(newcenters.size()-1);
-				this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames + 1), (event) -> {
-					this.brush.drawCenter(centerCopy.getX(), centerCopy.getY(), centerCopy.getCategory());
-				}));
-			}
+			double shift = engine.update();
+			publishFrames(this.stepLog.record(engine.getLabels(), engine.getCenterX(), engine.getCenterY()) + 1);
+			computation.progress("K-Means: iteration " + (iteration + 1) + ", largest center shift " + String.format("%.2f", shift), (iteration + 1) / 100.0);
 			
-			// Check to continue
-	        for(int i = 0; i < centers.size(); i++) {
-	        	SSE = Math.min(SSE,distance(centers.get(i),newcenters.get(i)));
-	        }
-	        
-            if(SSE <= 2){
+			// Check to continue: stop once no centroid moves more than 2 pixels
+            if(shift <= 2){
                 break;
             }
-            
-            centers = new ArrayList<>(newcenters);
-			categorizedNodes = new ArrayList<>(categorizedNodescopy);
-			
-			timeBetweenFrames += 2;
-			
-			System.out.println("Steps done: " + (((int)timeBetweenFrames)/2));
 		}
-		System.out.println("DONE!");
-	}
-	
-	private double distance(Node source, Node destination) {
-		//Calculate distance of 2 point: source and destination
-		double squareX = Math.pow(destination.getX() - source.getX(), 2);	// Calculate x^2
-		double squareY = Math.pow(destination.getY() - source.getY(), 2);	// Calculate y^2
-		return Math.sqrt(squareX + squareY);								// Distance = sqrt(x^2+y^2)
+		computation.progress("K-Means: done, " + this.stepLog.getStepCount() + " steps", 1);
+		LOGGER.fine(() -> "K-Means done, distance computations: " + engine.getDistanceComputations() + ", avoided: " + engine.getDistanceComputationsAvoided());
 	}
 }
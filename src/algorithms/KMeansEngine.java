@@ -0,0 +1,514 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import graph.PointStore;
+
+/**
+ * Headless K-Means over the points of a PointStore.
+ *
+ * The points are split into fixed partitions that are processed in parallel on a ForkJoinPool. In assign() each
+ * partition labels its points with the nearest center and accumulates per-cluster sums and counts into its own
+ * primitive buffers. update() then reduces the partition buffers once and moves the centers to the means.
+ *
+ * The HAMERLY and ELKAN modes keep distance bounds per point and skip the distance evaluations that cannot
+ * change a label, giving the same labels as LLOYD. Hamerly keeps one lower bound per point and suits small K,
+ * Elkan keeps one lower bound per point and center and prunes better for larger K. For more than a few dozen
+ * centers the KDTREE mode rebuilds a KD-tree over the centers in every assign() and looks up the nearest center of
+ * each point in it, so the cost per point grows with log(K) rather than K.
+ *
+ * Every assign() and update() pair is reported as one iteration to ClusteringMetrics.KMEANS.
+ */
+public class KMeansEngine {
+	private static final int MIN_PARTITION_SIZE = 4096;
+	private static final int KDTREE_MIN_CENTERS = 1000;	// From here on the KD-tree over the centers beats Hamerly
+
+	public enum Mode {
+		LLOYD,		// Compute every point-center distance
+		HAMERLY,	// One upper and one lower bound per point
+		ELKAN,		// One upper bound per point and one lower bound per point and center
+		KDTREE		// Nearest center from a KD-tree over the centers, rebuilt every iteration
+	}
+
+	private final PointStore points;
+	private final int size, numCenters;
+	private final double[] centerX, centerY;
+	private final int[] labels;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private Mode mode = Mode.LLOYD;
+	private final DistanceKernel kernel = DistanceKernels.get(DistanceKernel.Metric.SQUARED_EUCLIDEAN);
+
+	// Bounds of the accelerated modes, valid once an assign() has run in the current mode
+	private double[] upper, lower, lowerAll;
+	private boolean boundsValid = false, shiftsPending = false;
+	private final double[] centerShift;			// Distance each center moved in the last update()
+	private double maxShift, secondMaxShift;
+	private int maxShiftCenter;
+	private final double[] halfNearestCenter;	// Half the distance from each center to its nearest other center
+	private double[] halfCenterDistance;		// Half the distance between every pair of centers (Elkan)
+	private CenterIndex centerIndex;			// KD-tree over the centers (KDTREE)
+	private long distanceComputations = 0, distanceComputationsAvoided = 0;
+
+	// Per-partition accumulators, partition p owns the range [p * numCenters, (p + 1) * numCenters)
+	private int numPartitions;
+	private double[] partitionSumX, partitionSumY;
+	private long[] partitionCount;
+	private int[] partitionChanged;
+	private long[] partitionDistances;
+	private double[] partitionSse;
+
+	// Metrics of the current iteration, reported when update() completes it
+	private final ClusteringMetrics metrics = ClusteringMetrics.KMEANS;
+	private int iteration = 0;
+	private ClusteringMetrics.Phase assignPhase;
+	private int lastChanged;
+	private long lastDistances;
+	private double sse = Double.NaN;
+
+	/**
+	 * @param points
+	 * @param centerX - x-coordinates of the initial centers, copied
+	 * @param centerY - y-coordinates of the initial centers, copied
+	 */
+	public KMeansEngine(PointStore points, double[] centerX, double[] centerY) {
+		this.points = points;
+		this.size = points.size();
+		this.numCenters = centerX.length;
+		this.centerX = centerX.clone();
+		this.centerY = centerY.clone();
+		this.labels = new int[size];
+		Arrays.fill(labels, -1);
+		this.centerShift = new double[numCenters];
+		this.halfNearestCenter = new double[numCenters];
+		setPool(pool);
+	}
+	
+	/**
+	 * Pick the accelerated mode for a number of centers: Hamerly up to several hundred centers, where its single
+	 * bound prunes most distances, and the KD-tree over the centers from about a thousand, where its log(K) search
+	 * per point starts to pay for the tree it rebuilds every iteration.
+	 * @param numCenters
+	 * @return mode
+	 */
+	public static Mode acceleratedMode(int numCenters) {
+		return numCenters < KDTREE_MIN_CENTERS ? Mode.HAMERLY : Mode.KDTREE;
+	}
+
+	/**
+	 * Set how assign() finds the nearest centers. The bounds are rebuilt by the next assign().
+	 * @param mode
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+		this.boundsValid = false;
+		this.shiftsPending = false;
+		this.upper = mode == Mode.HAMERLY || mode == Mode.ELKAN ? new double[size] : null;
+		this.lower = mode == Mode.HAMERLY ? new double[size] : null;
+		this.lowerAll = mode == Mode.ELKAN ? new double[Math.multiplyExact(size, numCenters)] : null;
+		this.halfCenterDistance = mode == Mode.ELKAN ? new double[numCenters * numCenters] : null;
+		this.centerIndex = mode == Mode.KDTREE ? new CenterIndex(numCenters) : null;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Set the pool that runs the iterations. The common pool is used by default.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		int maxPartitions = Math.max(1, (size + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE);
+		this.numPartitions = Math.min(pool.getParallelism() * 4, maxPartitions);
+		this.partitionSumX = new double[numPartitions * numCenters];
+		this.partitionSumY = new double[numPartitions * numCenters];
+		this.partitionCount = new long[numPartitions * numCenters];
+		this.partitionChanged = new int[numPartitions];
+		this.partitionDistances = new long[numPartitions];
+		this.partitionSse = new double[numPartitions];
+	}
+
+	/**
+	 * Get the label of every point. The array is updated in place by assign().
+	 * @return labels
+	 */
+	public int[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Get the x-coordinates of the centers. The array is updated in place by update().
+	 * @return centerX
+	 */
+	public double[] getCenterX() {
+		return centerX;
+	}
+
+	/**
+	 * Get the y-coordinates of the centers. The array is updated in place by update().
+	 * @return centerY
+	 */
+	public double[] getCenterY() {
+		return centerY;
+	}
+
+	/**
+	 * Get the number of point-center distances evaluated by assign() so far.
+	 * @return distanceComputations
+	 */
+	public long getDistanceComputations() {
+		return distanceComputations;
+	}
+
+	/**
+	 * Get the number of point-center distances that assign() skipped so far, compared with evaluating all of
+	 * them in every iteration.
+	 * @return distanceComputationsAvoided
+	 */
+	public long getDistanceComputationsAvoided() {
+		return distanceComputationsAvoided;
+	}
+
+	/**
+	 * Get the sum of squared distances from the points to the centers they were assigned to by the last assign().
+	 * @return SSE, or NaN before the first assign()
+	 */
+	public double getSse() {
+		return sse;
+	}
+
+	/**
+	 * Assign every point to its nearest center and accumulate the cluster sums for the next update().
+	 * @return number of points whose label changed
+	 */
+	public int assign() {
+		ClusteringMetrics.Phase phase = metrics.begin("assign", iteration);
+		if (mode == Mode.HAMERLY || mode == Mode.ELKAN)
+			computeCenterDistances();
+		else if (mode == Mode.KDTREE)
+			centerIndex.build(centerX, centerY);
+		pool.invoke(new AssignTask(0, numPartitions));
+		int changed = 0;
+		long distances = 0;
+		double sse = 0;
+		for (int p = 0; p < numPartitions; p++) {
+			changed += partitionChanged[p];
+			distances += partitionDistances[p];
+			sse += partitionSse[p];
+		}
+		distanceComputations += distances;
+		distanceComputationsAvoided += (long) size * numCenters - distances;
+		boundsValid = mode == Mode.HAMERLY || mode == Mode.ELKAN;
+		shiftsPending = false;
+		this.sse = sse;
+		this.lastChanged = changed;
+		this.lastDistances = distances;
+		this.assignPhase = phase.end(distances, changed, sse);
+		return changed;
+	}
+
+	/**
+	 * Move every center to the mean of the points assigned to it by the last assign().
+	 * Centers without points keep their position.
+	 * @return the largest distance a center moved
+	 */
+	public double update() {
+		ClusteringMetrics.Phase phase = metrics.begin("update", iteration);
+		maxShift = 0;
+		secondMaxShift = 0;
+		maxShiftCenter = -1;
+		for (int c = 0; c < numCenters; c++) {
+			double sumX = 0, sumY = 0;
+			long count = 0;
+			for (int p = 0; p < numPartitions; p++) {
+				sumX += partitionSumX[p * numCenters + c];
+				sumY += partitionSumY[p * numCenters + c];
+				count += partitionCount[p * numCenters + c];
+			}
+			centerShift[c] = 0;
+			if (count == 0)
+				continue;
+			double newX = sumX / count, newY = sumY / count;
+			double dx = newX - centerX[c], dy = newY - centerY[c];
+			centerShift[c] = Math.sqrt(dx * dx + dy * dy);
+			centerX[c] = newX;
+			centerY[c] = newY;
+			// Track the two largest moves for the Hamerly lower bounds
+			if (centerShift[c] > maxShift) {
+				secondMaxShift = maxShift;
+				maxShift = centerShift[c];
+				maxShiftCenter = c;
+			} else if (centerShift[c] > secondMaxShift) {
+				secondMaxShift = centerShift[c];
+			}
+		}
+		shiftsPending = boundsValid;	// The bounds are moved by the next assign()
+		phase.end(0, 0, Double.NaN);
+		if (assignPhase != null) {
+			// The assignment and this update make one iteration
+			long allocated = assignPhase.getAllocatedBytes() < 0 ? -1 : assignPhase.getAllocatedBytes() + phase.getAllocatedBytes();
+			metrics.recordIteration(assignPhase.getNanos() + phase.getNanos(), lastDistances, lastChanged, sse, allocated);
+			assignPhase = null;
+		}
+		iteration++;
+		return maxShift;
+	}
+
+	/**
+	 * Iterate assign() and update() until no center moves more than the tolerance.
+	 * @param maxIterations
+	 * @param tolerance
+	 * @return result - the labels and centers arrays are the engine's own
+	 */
+	public ClusteringResult run(int maxIterations, double tolerance) {
+		int iteration = 0;
+		while (iteration < maxIterations) {
+			assign();
+			iteration++;
+			if (update() <= tolerance)
+				break;
+		}
+		return new ClusteringResult(labels, centerX, centerY, iteration);
+	}
+
+	/**
+	 * Assignment and accumulation of the points of one partition.
+	 * @param partition
+	 */
+	private void assignPartition(int partition) {
+		int from = (int) ((long) size * partition / numPartitions);
+		int to = (int) ((long) size * (partition + 1) / numPartitions);
+		int offset = partition * numCenters;
+		Arrays.fill(partitionSumX, offset, offset + numCenters, 0);
+		Arrays.fill(partitionSumY, offset, offset + numCenters, 0);
+		Arrays.fill(partitionCount, offset, offset + numCenters, 0);
+		switch (mode) {
+		case HAMERLY:
+			assignHamerly(partition, from, to, offset);
+			break;
+		case ELKAN:
+			assignElkan(partition, from, to, offset);
+			break;
+		case KDTREE:
+			assignIndexed(partition, from, to, offset);
+			break;
+		default:
+			assignLloyd(partition, from, to, offset);
+			break;
+		}
+	}
+
+	private void assignLloyd(int partition, int from, int to, int offset) {
+		double[] x = points.xs(), y = points.ys();
+		int changed = 0;
+		double sse = 0;
+		for (int i = from; i < to; i++) {
+			double px = x[i], py = y[i];
+			int nearest = kernel.nearest(px, py, centerX, centerY, numCenters);
+			if (labels[i] != nearest) {
+				labels[i] = nearest;
+				changed++;
+			}
+			sse += accumulate(offset, nearest, px, py);
+		}
+		partitionChanged[partition] = changed;
+		partitionSse[partition] = sse;
+		partitionDistances[partition] = (long) (to - from) * numCenters;
+	}
+
+	private void assignIndexed(int partition, int from, int to, int offset) {
+		double[] x = points.xs(), y = points.ys();
+		CenterIndex.Query query = centerIndex.new Query();
+		int changed = 0;
+		double sse = 0;
+		for (int i = from; i < to; i++) {
+			double px = x[i], py = y[i];
+			int nearest = query.find(px, py);
+			if (labels[i] != nearest) {
+				labels[i] = nearest;
+				changed++;
+			}
+			sse += accumulate(offset, nearest, px, py);
+		}
+		partitionChanged[partition] = changed;
+		partitionSse[partition] = sse;
+		partitionDistances[partition] = query.distances;
+	}
+
+	private void assignHamerly(int partition, int from, int to, int offset) {
+		double[] x = points.xs(), y = points.ys();
+		int changed = 0;
+		double sse = 0;
+		long distances = 0;
+		for (int i = from; i < to; i++) {
+			double px = x[i], py = y[i];
+			int nearest = labels[i];
+			if (boundsValid) {
+				if (shiftsPending) {
+					upper[i] += centerShift[nearest];
+					lower[i] -= nearest == maxShiftCenter ? secondMaxShift : maxShift;
+				}
+				double bound = Math.max(halfNearestCenter[nearest], lower[i]);
+				if (upper[i] > bound) {
+					// Tighten the upper bound, then scan all centers only if it still overlaps
+					upper[i] = distance(px, py, nearest);
+					distances++;
+					if (upper[i] > bound)
+						nearest = -1;
+				}
+			} else {
+				nearest = -1;
+			}
+			if (nearest < 0) {
+				// Full scan for the nearest and second nearest centers, on squared distances
+				double first = Double.MAX_VALUE, second = Double.MAX_VALUE;
+				for (int c = 0; c < numCenters; c++) {
+					double dx = px - centerX[c], dy = py - centerY[c];
+					double dist = dx * dx + dy * dy;
+					if (dist < first) {
+						second = first;
+						first = dist;
+						nearest = c;
+					} else if (dist < second) {
+						second = dist;
+					}
+				}
+				distances += numCenters;
+				upper[i] = Math.sqrt(first);
+				lower[i] = Math.sqrt(second);
+			}
+			if (labels[i] != nearest) {
+				labels[i] = nearest;
+				changed++;
+			}
+			sse += accumulate(offset, nearest, px, py);
+		}
+		partitionChanged[partition] = changed;
+		partitionSse[partition] = sse;
+		partitionDistances[partition] = distances;
+	}
+
+	private void assignElkan(int partition, int from, int to, int offset) {
+		double[] x = points.xs(), y = points.ys();
+		int changed = 0;
+		double sse = 0;
+		long distances = 0;
+		for (int i = from; i < to; i++) {
+			double px = x[i], py = y[i];
+			int base = i * numCenters;
+			int nearest = labels[i];
+			if (!boundsValid) {
+				// First pass: every distance becomes a tight lower bound
+				double first = Double.MAX_VALUE;
+				for (int c = 0; c < numCenters; c++) {
+					double dist = distance(px, py, c);
+					lowerAll[base + c] = dist;
+					if (dist < first) {
+						first = dist;
+						nearest = c;
+					}
+				}
+				distances += numCenters;
+				upper[i] = first;
+			} else {
+				if (shiftsPending) {
+					for (int c = 0; c < numCenters; c++)
+						lowerAll[base + c] = Math.max(0, lowerAll[base + c] - centerShift[c]);
+					upper[i] += centerShift[nearest];
+				}
+				if (upper[i] > halfNearestCenter[nearest]) {
+					boolean stale = true;	// Whether upper[i] may be loose
+					for (int c = 0; c < numCenters; c++) {
+						if (c == nearest || upper[i] <= lowerAll[base + c] || upper[i] <= halfCenterDistance[nearest * numCenters + c])
+							continue;
+						if (stale) {
+							upper[i] = distance(px, py, nearest);
+							lowerAll[base + nearest] = upper[i];
+							distances++;
+							stale = false;
+							if (upper[i] <= lowerAll[base + c] || upper[i] <= halfCenterDistance[nearest * numCenters + c])
+								continue;
+						}
+						double dist = distance(px, py, c);
+						lowerAll[base + c] = dist;
+						distances++;
+						if (dist < upper[i]) {
+							nearest = c;
+							upper[i] = dist;
+						}
+					}
+				}
+			}
+			if (labels[i] != nearest) {
+				labels[i] = nearest;
+				changed++;
+			}
+			sse += accumulate(offset, nearest, px, py);
+		}
+		partitionChanged[partition] = changed;
+		partitionSse[partition] = sse;
+		partitionDistances[partition] = distances;
+	}
+
+	/**
+	 * Compute the half distances between the centers used by the accelerated modes.
+	 */
+	private void computeCenterDistances() {
+		Arrays.fill(halfNearestCenter, Double.MAX_VALUE);
+		for (int c = 0; c < numCenters; c++) {
+			for (int other = c + 1; other < numCenters; other++) {
+				double dx = centerX[c] - centerX[other], dy = centerY[c] - centerY[other];
+				double half = 0.5 * Math.sqrt(dx * dx + dy * dy);
+				if (halfCenterDistance != null) {
+					halfCenterDistance[c * numCenters + other] = half;
+					halfCenterDistance[other * numCenters + c] = half;
+				}
+				halfNearestCenter[c] = Math.min(halfNearestCenter[c], half);
+				halfNearestCenter[other] = Math.min(halfNearestCenter[other], half);
+			}
+		}
+	}
+
+	private double distance(double px, double py, int center) {
+		double dx = px - centerX[center], dy = py - centerY[center];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Add a point to the sums of its center.
+	 * @return squared distance from the point to the center
+	 */
+	private double accumulate(int offset, int center, double px, double py) {
+		partitionSumX[offset + center] += px;
+		partitionSumY[offset + center] += py;
+		partitionCount[offset + center]++;
+		double dx = px - centerX[center], dy = py - centerY[center];
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Runs assignPartition() for the partitions [from, to).
+	 */
+	private class AssignTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		AssignTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new AssignTask(from, middle), new AssignTask(middle, to));
+			} else if (to > from) {
+				assignPartition(from);
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import graph.KDTree;
+import graph.PointStore;
+
+/**
+ * Initial centers for K-Means.
+ *
+ * K-Means++ picks every new center among the points with probability proportional to the squared distance to the
+ * nearest center picked so far. k-means|| replaces the k sequential passes by a few rounds in which every point is
+ * sampled independently, in parallel, with an oversampling factor; the candidates are then weighted by the number
+ * of points they are closest to and reduced to k centers with a weighted K-Means++.
+ */
+public class KMeansSeeding {
+	private static final int PARALLEL_THRESHOLD = 100_000;	// Points above which seed() uses k-means||
+	private static final int ROUNDS = 5;
+	private static final int MIN_PARTITION_SIZE = 4096;
+	private static final int MAX_PARTITIONS = 64;	// Fixed so that a seed gives the same centers on any machine
+
+	/**
+	 * Seed with K-Means++ for small inputs and k-means|| for large ones.
+	 * @param points
+	 * @param k
+	 * @param seed
+	 * @param centerX - receives the x-coordinates of the k centers
+	 * @param centerY - receives the y-coordinates of the k centers
+	 */
+	public static void seed(PointStore points, int k, long seed, double[] centerX, double[] centerY) {
+		if (points.size() > PARALLEL_THRESHOLD)
+			parallel(points, k, seed, ROUNDS, 2.0 * k, ForkJoinPool.commonPool(), centerX, centerY);
+		else
+			plusPlus(points, k, seed, centerX, centerY);
+	}
+
+	/**
+	 * Seed with centers drawn uniformly over the bounds of the points.
+	 * @param points
+	 * @param k
+	 * @param seed
+	 * @param centerX - receives the x-coordinates of the k centers
+	 * @param centerY - receives the y-coordinates of the k centers
+	 */
+	public static void uniform(PointStore points, int k, long seed, double[] centerX, double[] centerY) {
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int c = 0; c < k; c++) {
+			centerX[c] = points.getMinX() + random.nextDouble() * (points.getMaxX() - points.getMinX());
+			centerY[c] = points.getMinY() + random.nextDouble() * (points.getMaxY() - points.getMinY());
+		}
+	}
+
+	/**
+	 * Seed with K-Means++.
+	 * @param points
+	 * @param k
+	 * @param seed
+	 * @param centerX - receives the x-coordinates of the k centers
+	 * @param centerY - receives the y-coordinates of the k centers
+	 */
+	public static void plusPlus(PointStore points, int k, long seed, double[] centerX, double[] centerY) {
+		int size = points.size();
+		double[] weights = new double[size];
+		Arrays.fill(weights, 1);
+		weightedPlusPlus(points.xs(), points.ys(), weights, size, k, new SplittableRandom(seed), points, centerX, centerY);
+	}
+
+	/**
+	 * Seed with k-means||.
+	 * @param points
+	 * @param k
+	 * @param seed
+	 * @param rounds - number of sampling rounds
+	 * @param oversampling - expected number of candidates sampled per round
+	 * @param pool - pool running the sampling rounds, which does not change the centers picked for a seed
+	 * @param centerX - receives the x-coordinates of the k centers
+	 * @param centerY - receives the y-coordinates of the k centers
+	 */
+	public static void parallel(PointStore points, int k, long seed, int rounds, double oversampling, ForkJoinPool pool,
+			double[] centerX, double[] centerY) {
+		int size = points.size();
+		if (size == 0) {
+			uniform(points, k, seed, centerX, centerY);
+			return;
+		}
+		double[] x = points.xs(), y = points.ys();
+		int partitions = Math.max(1, Math.min(MAX_PARTITIONS, size / MIN_PARTITION_SIZE));
+		SplittableRandom random = new SplittableRandom(seed);
+		Candidates candidates = new Candidates();
+		double[] minDist = new double[size];		// Squared distance of each point to its nearest candidate
+		Arrays.fill(minDist, Double.MAX_VALUE);
+		double[] partitionCost = new double[partitions];
+
+		// First candidate: a uniformly chosen point
+		int first = random.nextInt(size);
+		candidates.add(x[first], y[first]);
+		int measured = 0;	// Candidates already folded into minDist
+		for (int round = 0; round < rounds; round++) {
+			// Fold the new candidates into the distances and sum the cost per partition
+			final int fromCandidate = measured, toCandidate = candidates.size;
+			run(pool, partitions, (p) -> {
+				double cost = 0;
+				for (int i = from(p, partitions, size); i < from(p + 1, partitions, size); i++) {
+					for (int c = fromCandidate; c < toCandidate; c++) {
+						double dx = x[i] - candidates.x[c], dy = y[i] - candidates.y[c];
+						minDist[i] = Math.min(minDist[i], dx * dx + dy * dy);
+					}
+					cost += minDist[i];
+				}
+				partitionCost[p] = cost;
+			});
+			measured = toCandidate;
+			double totalCost = 0;
+			for (double cost : partitionCost)
+				totalCost += cost;
+			if (totalCost == 0)
+				break;
+			// Sample every point independently, each partition with its own random stream
+			final double scale = oversampling / totalCost;
+			SplittableRandom[] randoms = new SplittableRandom[partitions];
+			for (int p = 0; p < partitions; p++)
+				randoms[p] = random.split();
+			Candidates[] sampled = new Candidates[partitions];
+			run(pool, partitions, (p) -> {
+				Candidates local = new Candidates();
+				for (int i = from(p, partitions, size); i < from(p + 1, partitions, size); i++) {
+					if (randoms[p].nextDouble() < minDist[i] * scale)
+						local.add(x[i], y[i]);
+				}
+				sampled[p] = local;
+			});
+			for (Candidates local : sampled) {
+				for (int c = 0; c < local.size; c++)
+					candidates.add(local.x[c], local.y[c]);
+			}
+		}
+
+		// Weight every candidate by the number of points closest to it, through a KD-tree over the candidates
+		int numCandidates = candidates.size;
+		PointStore candidateStore = new PointStore(numCandidates);
+		for (int c = 0; c < numCandidates; c++)
+			candidateStore.add(candidates.x[c], candidates.y[c], c);
+		KDTree candidateIndex = new KDTree(candidateStore);
+		double[] weights = new double[numCandidates];
+		double[][] partitionWeights = new double[partitions][];
+		run(pool, partitions, (p) -> {
+			double[] local = new double[numCandidates];
+			int[] nearest = new int[1];
+			double[] nearestDist = new double[1];
+			for (int i = from(p, partitions, size); i < from(p + 1, partitions, size); i++) {
+				candidateIndex.nearest(x[i], y[i], 1, nearest, nearestDist);
+				local[nearest[0]]++;
+			}
+			partitionWeights[p] = local;
+		});
+		for (double[] local : partitionWeights) {
+			for (int c = 0; c < numCandidates; c++)
+				weights[c] += local[c];
+		}
+		// Reduce the candidates to k centers
+		weightedPlusPlus(candidates.x, candidates.y, weights, numCandidates, k, random, points, centerX, centerY);
+	}
+
+	/**
+	 * Weighted K-Means++ over the first size entries of x and y. If fewer than k distinct locations exist, the
+	 * remaining centers are drawn uniformly over the bounds of the points.
+	 */
+	private static void weightedPlusPlus(double[] x, double[] y, double[] weights, int size, int k, SplittableRandom random,
+			PointStore bounds, double[] centerX, double[] centerY) {
+		double[] minDist = new double[size];
+		Arrays.fill(minDist, Double.MAX_VALUE);
+		for (int c = 0; c < k; c++) {
+			// Total sampling weight: the point weight alone for the first center, weight times D^2 afterwards
+			double total = 0;
+			for (int i = 0; i < size; i++)
+				total += c == 0 ? weights[i] : weights[i] * minDist[i];
+			if (total <= 0) {
+				double[] restX = new double[k - c], restY = new double[k - c];
+				uniform(bounds, k - c, random.nextLong(), restX, restY);
+				System.arraycopy(restX, 0, centerX, c, k - c);
+				System.arraycopy(restY, 0, centerY, c, k - c);
+				return;
+			}
+			double target = random.nextDouble() * total;
+			int chosen = size - 1;
+			for (int i = 0; i < size; i++) {
+				target -= c == 0 ? weights[i] : weights[i] * minDist[i];
+				if (target < 0) {
+					chosen = i;
+					break;
+				}
+			}
+			centerX[c] = x[chosen];
+			centerY[c] = y[chosen];
+			for (int i = 0; i < size; i++) {
+				double dx = x[i] - centerX[c], dy = y[i] - centerY[c];
+				minDist[i] = Math.min(minDist[i], dx * dx + dy * dy);
+			}
+		}
+	}
+
+	private static int from(int partition, int partitions, int size) {
+		return (int) ((long) size * partition / partitions);
+	}
+
+	/**
+	 * Run body for every partition on the pool and wait for all of them.
+	 */
+	private static void run(ForkJoinPool pool, int partitions, IntConsumer body) {
+		pool.invoke(new PartitionTask(body, 0, partitions));
+	}
+
+	private static class PartitionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntConsumer body;
+		private final int from, to;
+
+		PartitionTask(IntConsumer body, int from, int to) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PartitionTask(body, from, middle), new PartitionTask(body, middle, to));
+			} else if (to > from) {
+				body.accept(from);
+			}
+		}
+	}
+
+	/**
+	 * Growable list of candidate centers.
+	 */
+	private static class Candidates {
+		double[] x = new double[16], y = new double[16];
+		int size = 0;
+
+		void add(double px, double py) {
+			if (size == x.length) {
+				x = Arrays.copyOf(x, size * 2);
+				y = Arrays.copyOf(y, size * 2);
+			}
+			x[size] = px;
+			y[size] = py;
+			size++;
+		}
+	}
+}
@@ -1,187 +1,97 @@
 package algorithms;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.logging.Logger;
 
 import graph.Graph;
 import graph.Node;
-import graphics.Animation;
+import graph.PointStore;
 import graphics.Brush;
-import javafx.animation.KeyFrame;
-import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
+import graphics.PlaybackAnimation;
 import javafx.scene.paint.Color;
-import javafx.util.Duration;
 
-public class KNN implements Animation {
+public class KNN extends PlaybackAnimation {
+	private static final Logger LOGGER = Logger.getLogger(KNN.class.getName());
+	private static final int LINES_FRAME = 0, CIRCLE_FRAME = 1, COLOR_FRAME = 2;
 	private Node uncategorizedNode;
 	private Brush brush;
-	private Timeline timeline;
+	private Graph graph;
+	private int k;
+	private double[] neighbourX, neighbourY;	// Coordinates of the nearest neighbours
+	private double radius;
+	private boolean added = false;
 	
-	public KNN() {/* Empty constructor*/ }
+	public KNN() {
+		super("K-Nearest Neighbour", ClusteringMetrics.KNN);
+	}
 	
 	public KNN(int k, Graph graph, Brush brush) {
+		super("K-Nearest Neighbour", ClusteringMetrics.KNN);
 		this.brush = brush;
+		this.graph = graph;
 		this.uncategorizedNode = graph.getUncategorizedNode();
-		this.timeline = new Timeline();
-		KNNClustering(graph, uncategorizedNode, k);
-	}
-
-	@Override
-	public void start() {
-		this.timeline.play();
-		System.out.println("[INFO] Start K-Nearest Neighbour animation");
-	}
-
-	@Override
-	public void pause() {
-		this.timeline.pause();;
-		System.out.println("[INFO] Pause K-Nearest Neighbour animation");
-	}
-	
-	@Override
-	public void resume() {
-		this.timeline.play();
-		System.out.println("[INFO] Resume K-Nearest Neighbour animation");
+		this.k = k;
 	}
 
 	@Override
-	public void stop() {
-		this.timeline.stop();
-		this.brush.clear();
-		this.brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
-		System.out.println("[INFO] Stop K-Nearest Neighbour animation");
+	protected void compute(Computation computation) {
+		computation.progress("KNN: searching the " + k + " nearest neighbours", -1);
+		KNNClustering(graph, uncategorizedNode, k);
+		computation.progress("KNN: done", 1);
 	}
 
+	/**
+	 * Draw a frame: the lines to the nearest neighbours, then the circle around them, then the new color.
+	 */
 	@Override
-	public void previous() {
-		this.timeline.pause();
-		double previousTime = Math.floor(this.timeline.getCurrentTime().toSeconds()) - 1;
-		if (previousTime < 0) {
-			this.brush.clear();
-			this.brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), Color.BLACK);
-		} 
-		else {
-			this.timeline.playFrom(Duration.seconds(previousTime));
-			PauseTransition pause = new PauseTransition(Duration.seconds(0.5));
-	        pause.setOnFinished((pauseEvent) -> {
-	        	this.timeline.pause();
-	        });
-	        pause.play();
-			System.out.println("[INFO] Previous step in K-Nearest Neighbour animation");
+	protected void renderFrame(int frame) {
+		brush.clear();
+		switch (frame) {
+		case LINES_FRAME:
+			for (int i = 0; i < neighbourX.length; i++)
+				brush.drawLine(uncategorizedNode.getX(), uncategorizedNode.getY(), neighbourX[i], neighbourY[i]);
+			break;
+		case CIRCLE_FRAME:
+			brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), Color.BLACK);
+			brush.drawCircle(uncategorizedNode.getX(), uncategorizedNode.getY(), (int) radius);
+			break;
+		case COLOR_FRAME:
+			brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
+			// The classified node joins the graph the first time this frame is shown
+			if (!added && graph.add(uncategorizedNode)) {
+				added = true;
+				LOGGER.fine("KNN complete");
+			}
+			break;
+		default:
+			brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), added ? uncategorizedNode.getCategory() : Color.BLACK);
 		}
 	}
 
 	@Override
-	public void next() {
-		this.timeline.pause();
-		double nextTime = Math.ceil(this.timeline.getCurrentTime().toSeconds());
-		this.timeline.playFrom(Duration.seconds(nextTime));
-		PauseTransition pause = new PauseTransition(Duration.seconds(0.5));
-        pause.setOnFinished((pauseEvent) -> {
-        	this.timeline.pause();
-        });
-        pause.play();
-		System.out.println("[INFO] Next step in K-Nearest Neighbour animation");
+	public long getRetainedBytes() {
+		return neighbourX == null ? 0 : 2L * Double.BYTES * neighbourX.length;
 	}
 
 	private void KNNClustering(Graph graph, Node newNode, int k) {
-		double timeBetweenFrames = 0;
-		ArrayList<Node> categorizedNode = graph.getCategorizedNodes();
-		ArrayList<Node> nearestNeighbors = new ArrayList<Node>();
-		Map<Double, Node> nodeDistance = new HashMap<Double, Node>();
-		
-		//Get the distance from the uncategorized node to all categorized nodes
-		this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-			brush.clear();
-		}));
-		for (Node i: categorizedNode) {
-			nodeDistance.put(distance(newNode,i), i); // store Node with its distance
-			//Set animation: Calculate distance
-			this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-				brush.drawLine(newNode.getX(), newNode.getY(), i.getX(), i.getY());
-				System.out.println("[INFO] Get distance");
-			}));
-		}
-		
-		//Sort the distances in ascending order
-		Map<Double, Node> sortedMap = nodeDistance
-				.entrySet()
-				.stream()
-				.sorted(Map.Entry.<Double, Node>comparingByKey())
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1,e2) -> e1, LinkedHashMap::new));
+		PointStore points = graph.getPoints();
+		int[] nearestNeighbors = new int[k];
+		double[] squaredDistances = new double[k];
 		
-		//Get the list of nearest neighbors
-		for (double j: sortedMap.keySet()) {
-			if (nearestNeighbors.size() < k) nearestNeighbors.add(sortedMap.get(j));
-			else break;
+		//Get the k nearest categorized nodes and the category that appears the most within them
+		KNNClassifier classifier = new KNNClassifier(points, graph.getNeighbourIndex(), k);
+		int category = classifier.classify(newNode.getX(), newNode.getY(), nearestNeighbors, squaredDistances);
+		if (category < 0) return;
+		int found = Math.min(k, points.size());
+		this.neighbourX = new double[found];
+		this.neighbourY = new double[found];
+		for (int i = 0; i < found; i++) {
+			this.neighbourX[i] = points.getX(nearestNeighbors[i]);
+			this.neighbourY[i] = points.getY(nearestNeighbors[i]);
 		}
-		//Set animation: Get the list of KNN
-		this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames+1), (event) -> {
-			brush.clear();
-			brush.drawPoint(newNode.getX(), newNode.getY(), Color.BLACK);
-			brush.drawCircle(newNode.getX(), newNode.getY(), (int) distance(newNode, nearestNeighbors.get(k-1)));
-			System.out.println("[INFO] Show the list of KNN");
-		}));
-		
-		
-		//Get the category that appears the most within KNN, set color for uncategorized node
-		newNode.setCategory(maxCategory(nearestNeighbors));
-		//Set animation: Change the color of uncategorized node
-		this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames+2), (event) -> {
-			brush.clear();
-			brush.drawPoint(newNode.getX(), newNode.getY(), newNode.getCategory());
-			if (graph.add(newNode)) System.out.println("[INFO] KNN complete");
-		}));
-	}
-	
-	/**
-	 * Calculate the Euclidean distance between two nodes.
-	 * @param source
-	 * @param destination
-	 * @return distance
-	 */
-	private double distance(Node source, Node destination) {
-		double squareX = Math.pow(destination.getX() - source.getX(), 2);	// Calculate x^2
-		double squareY = Math.pow(destination.getY() - source.getY(), 2);	// Calculate y^2
-		return Math.sqrt(squareX + squareY);
-	}
-	
-	/**
-	 * Get the category that appears most time
-	 * @param nodeList
-	 * @return
-	 */
-	private Color maxCategory(ArrayList<Node> nodeList) {
-		Color[] categories = {Color.MAGENTA, Color.ORANGE,Color.RED,Color.GREEN,Color.CYAN,Color.PINK};
-		Color category;
-		int countMagenta = 0, countOrange = 0, countRed = 0, countGreen = 0, countCyan = 0, countPink = 0;
-		int[] countColor = {countMagenta, countOrange, countRed, countGreen, countCyan, countPink};
-		Map<Integer, Color> categoryCount = new HashMap<Integer, Color>();
+		this.radius = Math.sqrt(squaredDistances[found-1]);
 		
-		for (Node i: nodeList) {
-			category = i.getCategory();
-			for (int j=0;j<categories.length;j++) {
-				if (category.equals(categories[j])) {
-					countColor[j]++; break;
-				}
-			}
-		}
-		for (int i=0;i<categories.length;i++) {
-			categoryCount.put(countColor[i], categories[i]);
-		}
-		Map<Integer, Color> sortedCategory = categoryCount
-				.entrySet()
-				.stream()
-				.sorted(Collections.reverseOrder(Map.Entry.<Integer, Color>comparingByKey()))
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1,e2) -> e1, LinkedHashMap::new));
-		Arrays.sort(countColor);
-
-		return sortedCategory.get(countColor[countColor.length-1]);
+		//Set color for uncategorized node
+		newNode.setLabel(category);
+		publishFrames(COLOR_FRAME + 1);
 	}
 }
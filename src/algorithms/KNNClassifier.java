@@ -0,0 +1,185 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import graph.KDTree;
+import graph.NodeCategories;
+import graph.PointStore;
+
+/**
+ * Headless K-Nearest Neighbours classification against the labelled points of a PointStore.
+ *
+ * Neighbours come from a shared KDTree and the vote is counted in a primitive array indexed by label. The label
+ * with the most votes wins; ties go to the label of the nearest neighbour among the tied labels. With a metric
+ * other than the Euclidean distance, which the KD-tree cannot prune for, the neighbours are found by scanning all
+ * points in blocks through a DistanceKernel. Unlabelled neighbours (NodeCategories.UNCATEGORIZED) count towards the
+ * k but do not vote.
+ */
+public class KNNClassifier {
+	private static final int MIN_PARTITION_SIZE = 1024;
+	private static final int BLOCK_SIZE = 1024;	// Distances computed per kernel call when scanning
+
+	private final PointStore points;
+	private final KDTree index;
+	private final int k, numLabels;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private DistanceKernel kernel = null;	// Null for the Euclidean distance through the KD-tree
+
+	/**
+	 * @param points - labelled points
+	 * @param index - neighbour index over the points
+	 * @param k - number of neighbours that vote
+	 */
+	public KNNClassifier(PointStore points, KDTree index, int k) {
+		this.points = points;
+		this.index = index;
+		this.k = k;
+		int maxLabel = -1;
+		int[] labels = points.labels();
+		for (int i = 0; i < points.size(); i++)
+			maxLabel = Math.max(maxLabel, labels[i]);
+		this.numLabels = maxLabel + 1;
+	}
+
+	/**
+	 * Set the pool that runs batch classification. The common pool is used by default.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the metric that ranks the neighbours, EUCLIDEAN by default. EUCLIDEAN and SQUARED_EUCLIDEAN use the
+	 * KD-tree, the other metrics scan all points.
+	 * @param metric
+	 */
+	public void setMetric(DistanceKernel.Metric metric) {
+		boolean euclidean = metric == DistanceKernel.Metric.EUCLIDEAN || metric == DistanceKernel.Metric.SQUARED_EUCLIDEAN;
+		this.kernel = euclidean ? null : DistanceKernels.get(metric);
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Classify one location.
+	 * @param x
+	 * @param y
+	 * @param neighbours - receives the store indices of the neighbours in ascending order of distance, length at least k
+	 * @param squaredDistances - receives the squared distances of the neighbours, or their distances in the metric
+	 *                           set with setMetric(), length at least k
+	 * @return label - or NodeCategories.UNCATEGORIZED if none of the neighbours is labelled
+	 */
+	public int classify(double x, double y, int[] neighbours, double[] squaredDistances) {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.KNN.begin("classify", 0);
+		int label = classify(x, y, neighbours, squaredDistances, new int[numLabels], kernel == null ? null : new double[BLOCK_SIZE]);
+		phase.endIteration(0, label < 0 ? 0 : 1, Double.NaN);
+		return label;
+	}
+
+	/**
+	 * Classify many locations in parallel, sharing the neighbour index.
+	 * @param x - x-coordinates of the queries
+	 * @param y - y-coordinates of the queries
+	 * @param count - number of queries
+	 * @return label of every query, NodeCategories.UNCATEGORIZED where no neighbour is labelled
+	 */
+	public int[] classify(double[] x, double[] y, int count) {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.KNN.begin("classify", 0);
+		int[] result = new int[count];
+		int partitions = Math.max(1, Math.min(pool.getParallelism() * 4, count / MIN_PARTITION_SIZE));
+		pool.invoke(new ClassifyTask(x, y, result, partitions, 0, partitions));
+		phase.endIteration(0, count, Double.NaN);
+		return result;
+	}
+
+	private int classify(double x, double y, int[] neighbours, double[] squaredDistances, int[] votes, double[] block) {
+		int found = kernel == null ? index.nearest(x, y, k, neighbours, squaredDistances) : scan(x, y, neighbours, squaredDistances, block);
+		if (found == 0)
+			return NodeCategories.UNCATEGORIZED;
+		Arrays.fill(votes, 0);
+		int[] labels = points.labels();
+		int maxVotes = 0;
+		for (int i = 0; i < found; i++) {
+			int label = labels[neighbours[i]];
+			if (label >= 0)	// Unlabelled neighbours do not vote
+				maxVotes = Math.max(maxVotes, ++votes[label]);
+		}
+		if (maxVotes == 0)
+			return NodeCategories.UNCATEGORIZED;
+		// The nearest neighbour whose label has the most votes decides
+		for (int i = 0; i < found; i++) {
+			int label = labels[neighbours[i]];
+			if (label >= 0 && votes[label] == maxVotes)
+				return label;
+		}
+		return NodeCategories.UNCATEGORIZED;
+	}
+
+	/**
+	 * Find the k nearest points in the kernel's metric by scanning all points, keeping the neighbours sorted by
+	 * insertion. Points at equal distance keep their store order.
+	 * @return number of neighbours found
+	 */
+	private int scan(double qx, double qy, int[] neighbours, double[] distances, double[] block) {
+		double[] x = points.xs(), y = points.ys();
+		int size = points.size(), found = 0;
+		for (int from = 0; from < size; from += block.length) {
+			int to = Math.min(size, from + block.length);
+			kernel.distances(qx, qy, x, y, from, to, block);
+			for (int i = from; i < to; i++) {
+				double dist = block[i - from];
+				if (found == k && !(dist < distances[k - 1]))
+					continue;
+				int slot = found < k ? found++ : k - 1;
+				while (slot > 0 && dist < distances[slot - 1]) {
+					neighbours[slot] = neighbours[slot - 1];
+					distances[slot] = distances[slot - 1];
+					slot--;
+				}
+				neighbours[slot] = i;
+				distances[slot] = dist;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Classifies the queries of the partitions [from, to), each leaf with its own buffers.
+	 */
+	private class ClassifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] x, y;
+		private final int[] result;
+		private final int partitions, from, to;
+
+		ClassifyTask(double[] x, double[] y, int[] result, int partitions, int from, int to) {
+			this.x = x;
+			this.y = y;
+			this.result = result;
+			this.partitions = partitions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ClassifyTask(x, y, result, partitions, from, middle), new ClassifyTask(x, y, result, partitions, middle, to));
+				return;
+			}
+			int[] neighbours = new int[k], votes = new int[numLabels];
+			double[] squaredDistances = new double[k];
+			double[] block = kernel == null ? null : new double[BLOCK_SIZE];
+			int first = (int) ((long) result.length * from / partitions);
+			int last = (int) ((long) result.length * to / partitions);
+			for (int i = first; i < last; i++)
+				result[i] = classify(x[i], y[i], neighbours, squaredDistances, votes, block);
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import graph.PointStore;
+
+/**
+ * Gaussian kernel density estimate of the points of a PointStore over a regular grid, an alternative to
+ * MeanShiftEngine that does not revisit the points for every shift.
+ *
+ * The points are binned once: each point spreads its unit weight over the four grid nodes around it. For every
+ * bandwidth the bins are convolved with a Gaussian truncated at three bandwidths, as a pass along the rows then a
+ * pass along the columns, so a new bandwidth costs O(nodes x taps) whatever the number of points. Mean Shift with
+ * a Gaussian kernel climbs the gradient of this estimate; here the climb is a steepest ascent from node to
+ * neighbouring node, cached per node, so any number of locations reach their mode in a few steps and clustering
+ * the whole dataset is one more pass over the points.
+ */
+public class KernelDensityField {
+	private static final int MAX_NODES = 1 << 21;		// Cells are enlarged until the grid fits
+	private static final double TRUNCATION = 3;		// Kernel support in bandwidths
+	private static final int SEQUENTIAL_ROWS = 16;		// Rows per fork/join leaf task
+	private static final int UNKNOWN = -1;
+	private static final double MAX_REFINEMENT = 0.499;	// Below half a cell, so a refined mode stays nearest to its node
+
+	private final PointStore points;
+	private final int size;
+	private final double cellSize, originX, originY;
+	private final int columns, rows;
+	private final double[] bins;	// Point weight of every node, row-major
+	private double[] density;		// Smoothed bins, normalised to a probability density
+	private double bandwidth;
+	private double mergeTolerance = Double.NaN;	// Half the bandwidth unless set
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	// Steepest ascent cache for the current bandwidth, filled on demand
+	private int[] modeOf;	// Local maximum reached from every node, UNKNOWN if not climbed yet
+	private int[] ascent;	// Number of steps from every node to its local maximum
+	private int[] path = new int[64];
+
+	/**
+	 * Bin all points currently in the store and smooth them with the given bandwidth.
+	 * @param points
+	 * @param cellSize - distance between grid nodes, enlarged if the grid would exceed MAX_NODES
+	 * @param bandwidth - standard deviation of the Gaussian kernel
+	 */
+	public KernelDensityField(PointStore points, double cellSize, double bandwidth) {
+		this.points = points;
+		this.size = points.size();
+		double[] x = points.xs(), y = points.ys();
+		// Bounds of the points
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		if (size == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		cellSize = Math.max(cellSize, Double.MIN_NORMAL);
+		while ((long) nodes(maxX - minX, cellSize) * nodes(maxY - minY, cellSize) > MAX_NODES)
+			cellSize *= 1.25;
+		this.cellSize = cellSize;
+		this.originX = minX;
+		this.originY = minY;
+		this.columns = nodes(maxX - minX, cellSize);
+		this.rows = nodes(maxY - minY, cellSize);
+
+		// Linear binning, the weights of a point are the areas of the opposite sub-rectangles
+		this.bins = new double[columns * rows];
+		for (int i = 0; i < size; i++) {
+			double fx = (x[i] - originX) / cellSize, fy = (y[i] - originY) / cellSize;
+			int column = (int) fx, row = (int) fy;
+			double tx = fx - column, ty = fy - row;
+			int node = row * columns + column;
+			bins[node] += (1 - tx) * (1 - ty);
+			bins[node + 1] += tx * (1 - ty);
+			bins[node + columns] += (1 - tx) * ty;
+			bins[node + columns + 1] += tx * ty;
+		}
+		setBandwidth(bandwidth);
+	}
+
+	/**
+	 * Number of nodes covering an extent, with one more so that every point has nodes on both sides.
+	 */
+	private static int nodes(double extent, double cellSize) {
+		return (int) Math.min(Integer.MAX_VALUE, (long) (extent / cellSize) + 2);
+	}
+
+	/**
+	 * Smooth the bins with a new bandwidth. The cached climbs are discarded.
+	 * @param bandwidth - standard deviation of the Gaussian kernel
+	 */
+	public synchronized void setBandwidth(double bandwidth) {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.MEAN_SHIFT.begin("density", 0);
+		int radius = (int) Math.min(Math.ceil(TRUNCATION * bandwidth / cellSize), Math.max(columns, rows));
+		double[] taps = new double[2 * radius + 1];
+		for (int k = 0; k < taps.length; k++) {
+			double t = (k - radius) * cellSize / bandwidth;
+			taps[k] = Math.exp(-0.5 * t * t);
+		}
+		double[] smoothedRows = new double[bins.length];
+		pool.invoke(new ConvolveTask(bins, smoothedRows, taps, true, 0, rows));
+		double[] smoothed = new double[bins.length];
+		pool.invoke(new ConvolveTask(smoothedRows, smoothed, taps, false, 0, rows));
+		double scale = 1 / (Math.max(size, 1) * 2 * Math.PI * bandwidth * bandwidth);
+		for (int i = 0; i < smoothed.length; i++)
+			smoothed[i] *= scale;
+		this.density = smoothed;
+		this.bandwidth = bandwidth;
+		this.modeOf = null;
+		this.ascent = null;
+		phase.end(2L * bins.length * taps.length, 0, Double.NaN);
+	}
+
+	public double getBandwidth() {
+		return bandwidth;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Set the distance under which two modes are merged into one cluster, half the bandwidth by default.
+	 * @param mergeTolerance
+	 */
+	public void setMergeTolerance(double mergeTolerance) {
+		this.mergeTolerance = mergeTolerance;
+	}
+
+	/**
+	 * Set the pool that runs the convolutions. The common pool is used by default.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Get the estimated density at a location, interpolated between the four nodes around it.
+	 * @param x
+	 * @param y
+	 * @return density, 0 outside the grid
+	 */
+	public double density(double x, double y) {
+		double fx = (x - originX) / cellSize, fy = (y - originY) / cellSize;
+		if (!(fx >= 0 && fy >= 0 && fx <= columns - 1 && fy <= rows - 1))
+			return 0;
+		int column = Math.min((int) fx, columns - 2), row = Math.min((int) fy, rows - 2);
+		double tx = fx - column, ty = fy - row;
+		int node = row * columns + column;
+		return (1 - ty) * ((1 - tx) * density[node] + tx * density[node + 1])
+				+ ty * ((1 - tx) * density[node + columns] + tx * density[node + columns + 1]);
+	}
+
+	/**
+	 * Move a location one step up the density: to the densest neighbour of its nearest node, or to the refined
+	 * mode once that node is a local maximum, where further shifts stay put.
+	 * @param x
+	 * @param y
+	 * @param out - receives the shifted location
+	 * @return false - if the density is 0 at the nearest node, out is left unchanged
+	 */
+	public synchronized boolean shift(double x, double y, double[] out) {
+		int node = node(x, y);
+		if (!(density[node] > 0))
+			return false;
+		int next = uphill(node);
+		if (next == node) {
+			refine(node, out);
+		} else {
+			out[0] = originX + next % columns * cellSize;
+			out[1] = originY + next / columns * cellSize;
+		}
+		return true;
+	}
+
+	/**
+	 * Climb from a location to its mode.
+	 * @param x
+	 * @param y
+	 * @param out - receives the mode, refined between the nodes
+	 * @return number of steps from the nearest node to the mode
+	 */
+	public synchronized int climb(double x, double y, double[] out) {
+		int node = node(x, y);
+		refine(mode(node), out);
+		return ascent[node];
+	}
+
+	/**
+	 * Cluster all points of the store: every point joins the mode climbed from its nearest node, and modes within
+	 * the merge tolerance of each other are merged, higher modes first.
+	 * @return result - labels are indexed like the points of the store
+	 */
+	public synchronized ClusteringResult cluster() {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.MEAN_SHIFT.begin("cluster", 0);
+		double[] x = points.xs(), y = points.ys();
+		int[] pointMode = new int[size];
+		int[] slot = new int[density.length];	// Index of every mode node in modeNodes
+		Arrays.fill(slot, UNKNOWN);
+		int[] modeNodes = new int[16];
+		int numModes = 0, iterations = 0;
+		for (int i = 0; i < size; i++) {
+			int node = node(x[i], y[i]);
+			int mode = mode(node);
+			iterations = Math.max(iterations, ascent[node]);
+			if (slot[mode] == UNKNOWN) {
+				if (numModes == modeNodes.length)
+					modeNodes = Arrays.copyOf(modeNodes, numModes * 2);
+				slot[mode] = numModes;
+				modeNodes[numModes++] = mode;
+			}
+			pointMode[i] = slot[mode];
+		}
+		// Highest modes first, so that they become the cluster centers
+		Integer[] order = new Integer[numModes];
+		for (int m = 0; m < numModes; m++)
+			order[m] = m;
+		int[] modes = modeNodes;
+		Arrays.sort(order, (a, b) -> Double.compare(density[modes[b]], density[modes[a]]));
+		double[] modeX = new double[numModes], modeY = new double[numModes];
+		int[] rank = new int[numModes];
+		double[] refined = new double[2];
+		for (int r = 0; r < numModes; r++) {
+			refine(modeNodes[order[r]], refined);
+			modeX[r] = refined[0];
+			modeY[r] = refined[1];
+			rank[order[r]] = r;
+		}
+		double tolerance = Double.isNaN(mergeTolerance) ? bandwidth / 2 : mergeTolerance;
+		ClusteringResult merged = MeanShiftEngine.mergeModes(modeX, modeY, numModes, tolerance, iterations);
+		int[] modeLabels = merged.getLabels(), labels = new int[size];
+		for (int i = 0; i < size; i++)
+			labels[i] = modeLabels[rank[pointMode[i]]];
+		phase.endIteration(0, size, Double.NaN);
+		return new ClusteringResult(labels, merged.getCenterX(), merged.getCenterY(), iterations);
+	}
+
+	/**
+	 * Nearest grid node of a location, clamped to the grid.
+	 */
+	private int node(double x, double y) {
+		int column = (int) Math.max(0, Math.min(columns - 1, Math.round((x - originX) / cellSize)));
+		int row = (int) Math.max(0, Math.min(rows - 1, Math.round((y - originY) / cellSize)));
+		return row * columns + column;
+	}
+
+	/**
+	 * Follow the steepest ascent from a node to a local maximum, caching the result for every node on the way.
+	 */
+	private int mode(int node) {
+		if (modeOf == null) {
+			modeOf = new int[density.length];
+			ascent = new int[density.length];
+			Arrays.fill(modeOf, UNKNOWN);
+		}
+		int length = 0, current = node;
+		while (modeOf[current] == UNKNOWN) {
+			int next = uphill(current);
+			if (next == current) {
+				modeOf[current] = current;
+				ascent[current] = 0;
+				break;
+			}
+			if (length == path.length)
+				path = Arrays.copyOf(path, length * 2);
+			path[length++] = current;
+			current = next;
+		}
+		// Fill in the walked nodes, nearest to the mode first
+		int mode = modeOf[current], steps = ascent[current];
+		while (length > 0) {
+			int walked = path[--length];
+			modeOf[walked] = mode;
+			ascent[walked] = ++steps;
+		}
+		return mode;
+	}
+
+	/**
+	 * Densest of a node and its eight neighbours, the node itself on ties.
+	 */
+	private int uphill(int node) {
+		int column = node % columns, row = node / columns;
+		int best = node;
+		double bestDensity = density[node];
+		for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+			for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+				int neighbour = r * columns + c;
+				if (density[neighbour] > bestDensity) {
+					best = neighbour;
+					bestDensity = density[neighbour];
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Location of a local maximum refined by fitting a parabola through the node and its neighbours on each axis.
+	 */
+	private void refine(int node, double[] out) {
+		int column = node % columns, row = node / columns;
+		double at = density[node];
+		double left = column > 0 ? density[node - 1] : 0, right = column < columns - 1 ? density[node + 1] : 0;
+		double up = row > 0 ? density[node - columns] : 0, down = row < rows - 1 ? density[node + columns] : 0;
+		out[0] = originX + (column + peakOffset(left, at, right)) * cellSize;
+		out[1] = originY + (row + peakOffset(up, at, down)) * cellSize;
+	}
+
+	/**
+	 * Offset of the vertex of the parabola through (-1, before), (0, at) and (1, after), within half a cell.
+	 */
+	private static double peakOffset(double before, double at, double after) {
+		double curvature = before - 2 * at + after;
+		if (!(curvature < 0))
+			return 0;
+		return Math.max(-MAX_REFINEMENT, Math.min(MAX_REFINEMENT, 0.5 * (before - after) / curvature));
+	}
+
+	/**
+	 * Convolves the rows [from, to) of a grid with the kernel taps, along the rows or along the columns.
+	 */
+	private class ConvolveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final double[] in, out, taps;
+		private final boolean alongRows;
+		private final int from, to;
+
+		ConvolveTask(double[] in, double[] out, double[] taps, boolean alongRows, int from, int to) {
+			this.in = in;
+			this.out = out;
+			this.taps = taps;
+			this.alongRows = alongRows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SEQUENTIAL_ROWS) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ConvolveTask(in, out, taps, alongRows, from, middle),
+						new ConvolveTask(in, out, taps, alongRows, middle, to));
+				return;
+			}
+			int radius = taps.length / 2;
+			for (int row = from; row < to; row++) {
+				int base = row * columns;
+				if (alongRows) {
+					for (int column = 0; column < columns; column++) {
+						int fromTap = Math.max(0, radius - column), toTap = Math.min(taps.length, columns + radius - column);
+						int offset = base + column - radius;
+						double sum = 0;
+						for (int k = fromTap; k < toTap; k++)
+							sum += in[offset + k] * taps[k];
+						out[base + column] = sum;
+					}
+				} else {
+					// Add whole weighted rows, so the inner loop runs over contiguous memory
+					int fromTap = Math.max(0, radius - row), toTap = Math.min(taps.length, rows + radius - row);
+					for (int k = fromTap; k < toTap; k++) {
+						int source = (row + k - radius) * columns;
+						double weight = taps[k];
+						for (int column = 0; column < columns; column++)
+							out[base + column] += in[source + column] * weight;
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,83 +1,68 @@
 package algorithms;
 
+import java.util.Arrays;
+import java.util.function.Supplier;
+
 import graph.Graph;
 import graph.Node;
-import graphics.Animation;
 import graphics.Brush;
-import javafx.animation.KeyFrame;
-import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
+import graphics.PlaybackAnimation;
 import javafx.scene.paint.Color;
-import javafx.util.Duration;
 
-public class MeanShift implements Animation {
+public class MeanShift extends PlaybackAnimation {
+	private static final DistanceKernel SQUARED_DISTANCE = DistanceKernels.get(DistanceKernel.Metric.SQUARED_EUCLIDEAN);
 	private Node uncategorizedNode;
 	private Brush brush;
-	private Timeline timeline;
+	private Graph graph;
+	private int bandwidth;
+	private Supplier<KernelDensityField> densityField;	// Null to shift over the points
+	// Location after every shift, written by compute() while earlier frames are drawn
+	private double[] pathX = new double[16], pathY = new double[16];
+	
+	public MeanShift() {
+		super("Mean Shift Clustering", ClusteringMetrics.MEAN_SHIFT);
+	}
 	
-	public MeanShift() { /* Empty constructor */ }
 	public MeanShift(int bandwidth, Graph graph, Brush brush) {
+		super("Mean Shift Clustering", ClusteringMetrics.MEAN_SHIFT);
 		this.brush = brush;
+		this.bandwidth = bandwidth;
+		this.graph = graph;
 		this.uncategorizedNode = graph.getUncategorizedNode();
-		this.timeline = new Timeline();
-		meanShiftClustering(graph, bandwidth);
-	}
-
-	@Override
-	public void start() {
-		this.timeline.play();
-		System.out.println("[INFO] Start Mean Shift Clustering animation");
-	}
-
-	@Override
-	public void pause() {
-		this.timeline.pause();
-		System.out.println("[INFO] Pause Mean Shift Clustering animation");
 	}
 	
-	@Override
-	public void resume() {
-		this.timeline.play();
-		System.out.println("[INFO] Resume Mean Shift Clustering animation");
+	/**
+	 * Mean Shift that climbs a smoothed density grid instead of the points.
+	 * @param bandwidth
+	 * @param graph
+	 * @param brush
+	 * @param densityField - provides the field smoothed with the bandwidth, called on the worker thread
+	 */
+	public MeanShift(int bandwidth, Graph graph, Brush brush, Supplier<KernelDensityField> densityField) {
+		this(bandwidth, graph, brush);
+		this.densityField = densityField;
 	}
 
 	@Override
-	public void stop() {
-		this.timeline.stop();
-		this.brush.clear();
-		this.brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
-		System.out.println("[INFO] Stop Mean Shift Clustering animation");
+	protected void compute(Computation computation) {
+		meanShiftClustering(graph, bandwidth, computation);
 	}
 
+	/**
+	 * Draw the location after the given shift with its window.
+	 */
 	@Override
-	public void previous() {
-		this.timeline.pause();
-		double previousTime = Math.floor(this.timeline.getCurrentTime().toSeconds()) - 1;
-		if (previousTime < 0) {
-			this.brush.clear();
-			this.brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
-		} else {
-			this.timeline.playFrom(Duration.seconds(previousTime));
-			PauseTransition pause = new PauseTransition(Duration.seconds(1));
-	        pause.setOnFinished((pauseEvent) -> {
-	        	this.timeline.pause();
-	        });
-	        pause.play();
-			System.out.println("[INFO] Previous step in Mean Shift Clustering animation");
-		}
+	protected synchronized void renderFrame(int frame) {
+		brush.clear();
+		if (frame < 0)
+			brush.drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
+		else
+			drawStep(pathX[frame], pathY[frame], bandwidth);
 	}
 
 	@Override
-	public void next() {
-		this.timeline.pause();
-		double nextTime = Math.ceil(this.timeline.getCurrentTime().toSeconds());
-		this.timeline.playFrom(Duration.seconds(nextTime));
-		PauseTransition pause = new PauseTransition(Duration.seconds(1));
-        pause.setOnFinished((pauseEvent) -> {
-        	this.timeline.pause();
-        });
-        pause.play();
-		System.out.println("[INFO] Next step in Mean Shift Clustering animation");
+	public synchronized long getRetainedBytes() {
+		return 2L * Double.BYTES * pathX.length;
 	}
 
 	/**
@@ -85,82 +70,61 @@ public class MeanShift implements Animation {
 	 * in order to build the animation required.
 	 * @param graph
 	 * @param bandwidth
+	 * @param computation
 	 */
-	private void meanShiftClustering(Graph graph, int bandwidth) {
-		double timeBetweenFrames = 0;
-		Node currentNode = null, newNode = null;
+	private void meanShiftClustering(Graph graph, int bandwidth, Computation computation) {
+		int frames = 0;
+		double currentX, currentY;
+		MeanShiftEngine engine = null;
+		KernelDensityField field = null;
+		if (densityField != null) {
+			computation.progress("Mean Shift: smoothing the density grid", -1);
+			field = densityField.get();
+		} else {
+			computation.progress("Mean Shift: indexing the points", -1);
+			engine = new MeanShiftEngine(graph.getGridIndex(bandwidth));
+		}
+		double[] shifted = {uncategorizedNode.getX(), uncategorizedNode.getY()};
 		do {
-			currentNode = graph.getUncategorizedNode();
-			double shiftX = 0, shiftY = 0, scaleFactor = 0;
-			for (Node originalNode : graph.getCategorizedNodes()) {
-				// Calculate the distance
-				double distance = distance(currentNode, originalNode);
-				if (distance <= bandwidth) {
-					double weight = kernel(distance, bandwidth);
-					if (weight > 0) {
-						// Calculate the numerator
-						shiftX += originalNode.getX() * weight;
-						shiftY += originalNode.getY() * weight;
-						// Calculate the denominator
-						scaleFactor += weight;
-					}
+			computation.checkCancelled();
+			currentX = shifted[0];
+			currentY = shifted[1];
+			// Shift to the kernel-weighted mean of the nodes within the bandwidth
+			ClusteringMetrics.Phase phase = ClusteringMetrics.MEAN_SHIFT.begin("shift", frames);
+			boolean moved;
+			if (field != null) {
+				moved = field.shift(currentX, currentY, shifted);
+				phase.endIteration(0, 0, Double.NaN);
+			} else {
+				long distancesBefore = engine.getDistanceEvaluations();
+				moved = engine.shift(currentX, currentY, shifted);
+				phase.endIteration(engine.getDistanceEvaluations() - distancesBefore, 0, Double.NaN);
+			}
+			if (!moved)
+				break;
+			// Record the new shifted point as a frame
+			synchronized (this) {
+				if (frames == pathX.length) {
+					pathX = Arrays.copyOf(pathX, frames * 2);
+					pathY = Arrays.copyOf(pathY, frames * 2);
 				}
+				pathX[frames] = shifted[0];
+				pathY[frames] = shifted[1];
 			}
-			shiftX = shiftX / scaleFactor;
-			shiftY = shiftY / scaleFactor;
-			// Set the new shifted point
-			final Node node = new Node(shiftX, shiftY, Color.BLACK);
-			graph.setUncategorizedNode(node);
-			// Set animation
-			this.timeline.getKeyFrames().add(new KeyFrame(Duration.seconds(timeBetweenFrames), (event) -> {
-				drawStep(node, bandwidth);
-				timeline.pause();
-				PauseTransition pause = new PauseTransition(Duration.seconds(0.5));
-	            pause.setOnFinished((pauseEvent) -> {
-	            	brush.clear();
-		            drawStep(node, bandwidth);
-	            	timeline.play();
-	            });
-	            pause.play();
-			}));
-			// Set new variables
-			newNode = node;
-			timeBetweenFrames += 1;
-		} while (distance(currentNode, newNode) > 0.00005); // Run while the shifting distance is still significant
-		graph.setUncategorizedNode(uncategorizedNode); // Reset uncategorized node for future runs
-	}
-	
-	/**
-	 * Calculate the Euclidean distance between two nodes.
-	 * @param source
-	 * @param destination
-	 * @return distance
-	 */
-	private double distance(Node source, Node destination) {
-		double squareX = Math.pow(destination.getX() - source.getX(), 2);	// Calculate x^2
-		double squareY = Math.pow(destination.getY() - source.getY(), 2);	// Calculate y^2
-		return Math.sqrt(squareX + squareY);
-	}
-	
-	/**
-	 * Calculate the kernel using the Gaussian kernel function.
-	 * @param distance
-	 * @param bandwidth
-	 * @return kernel
-	 */
-	private double kernel(double distance, int bandwidth) {
-		double squareDistance = Math.pow(distance, 2);
-		double squareBandwidth = Math.pow(bandwidth, 2);
-		return Math.pow(Math.E, -0.5 * (squareDistance / squareBandwidth));
+			publishFrames(++frames);
+			computation.progress("Mean Shift: " + frames + " shifts", -1);
+		} while (SQUARED_DISTANCE.distance(currentX, currentY, shifted[0], shifted[1]) > 0.00005 * 0.00005); // Run while the shifting distance is still significant
+		computation.progress("Mean Shift: converged after " + frames + " shifts", 1);
 	}
 	
 	/**
 	 * Draw current point with window of radius specified.
-	 * @param node
+	 * @param x
+	 * @param y
 	 * @param radius
 	 */
-	private void drawStep(Node node, int radius) {
-		brush.drawPoint(node.getX(), node.getY(), Color.BLACK);
-		brush.drawCircle(node.getX(), node.getY(), radius);
+	private void drawStep(double x, double y, int radius) {
+		brush.drawPoint(x, y, Color.BLACK);
+		brush.drawCircle(x, y, radius);
 	}
 }
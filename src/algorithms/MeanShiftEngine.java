@@ -0,0 +1,382 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import graph.GridIndex;
+
+/**
+ * Headless Mean Shift over the points of a GridIndex, with a kernel whose bandwidth is the grid radius: a
+ * Gaussian, truncated at the bandwidth and read from a lookup table, or a flat kernel that averages the points
+ * within the bandwidth.
+ *
+ * cluster() runs seeds to convergence in parallel on a ForkJoinPool and merges the modes that converged within
+ * the merge tolerance of each other. By default every point is a seed and is labelled with the cluster of its
+ * mode. With bin seeding the points are snapped to a grid of bandwidth-sized bins, only the centers of the bins
+ * holding at least the minimum number of points are climbed, and every point is labelled with its nearest cluster.
+ */
+public class MeanShiftEngine {
+	private static final int SEQUENTIAL_THRESHOLD = 256;	// Seeds per fork/join leaf task
+	private static final int MAX_MERGE_CELLS = 1 << 20;
+	private static final int GAUSSIAN_TABLE_SIZE = 1024;	// Linear interpolation error below 1e-7
+	private static final double[] GAUSSIAN_TABLE = new double[GAUSSIAN_TABLE_SIZE + 2];
+	static {
+		// exp(-t / 2) for t = squared distance / squared bandwidth in [0, 1], one extra entry past t = 1
+		for (int i = 0; i < GAUSSIAN_TABLE.length; i++)
+			GAUSSIAN_TABLE[i] = Math.exp(-0.5 * i / GAUSSIAN_TABLE_SIZE);
+	}
+
+	public enum Kernel {
+		GAUSSIAN,	// exp(-d^2 / 2h^2) within the bandwidth h
+		FLAT		// 1 within the bandwidth
+	}
+
+	private final GridIndex grid;
+	private final double bandwidth, squareBandwidth;
+	private final double tableScale;	// Squared distance to Gaussian table position
+	private Kernel kernel = Kernel.GAUSSIAN;
+	private int minBinFrequency = 0;	// 0 seeds every point
+	private double convergenceThreshold;
+	private int maxIterations = 300;
+	private double mergeTolerance;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private final LongAdder distanceEvaluations = new LongAdder();
+
+	/**
+	 * @param grid - grid index over the points, its radius is the bandwidth
+	 */
+	public MeanShiftEngine(GridIndex grid) {
+		this.grid = grid;
+		this.bandwidth = grid.getRadius();
+		this.squareBandwidth = bandwidth * bandwidth;
+		this.tableScale = GAUSSIAN_TABLE_SIZE / squareBandwidth;
+		this.convergenceThreshold = 1e-3 * bandwidth;
+		this.mergeTolerance = bandwidth / 2;
+	}
+
+	public double getBandwidth() {
+		return bandwidth;
+	}
+
+	/**
+	 * Get the number of point distances evaluated by shift() so far, climbs and cluster() included.
+	 * @return distance evaluations
+	 */
+	public long getDistanceEvaluations() {
+		return distanceEvaluations.sum();
+	}
+
+	/**
+	 * Set the kernel weighting the points within the bandwidth, GAUSSIAN by default.
+	 * @param kernel
+	 */
+	public void setKernel(Kernel kernel) {
+		this.kernel = kernel;
+	}
+
+	public Kernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Seed cluster() with the centers of the bandwidth-sized bins holding at least minBinFrequency points instead
+	 * of every point. 0, the default, seeds every point.
+	 * @param minBinFrequency
+	 */
+	public void setBinSeeding(int minBinFrequency) {
+		this.minBinFrequency = minBinFrequency;
+	}
+
+	/**
+	 * Set the shift length under which a seed is considered converged.
+	 * @param convergenceThreshold
+	 */
+	public void setConvergenceThreshold(double convergenceThreshold) {
+		this.convergenceThreshold = convergenceThreshold;
+	}
+
+	/**
+	 * Set the maximum number of shifts of a single seed.
+	 * @param maxIterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Set the distance under which two converged modes are merged into one cluster.
+	 * @param mergeTolerance
+	 */
+	public void setMergeTolerance(double mergeTolerance) {
+		this.mergeTolerance = mergeTolerance;
+	}
+
+	/**
+	 * Set the pool that runs cluster(). The common pool is used by default.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Shift a location once to the kernel-weighted mean of the points within the bandwidth.
+	 * @param x
+	 * @param y
+	 * @param out - receives the shifted location
+	 * @return false - if no point lies within the bandwidth, out is left unchanged
+	 */
+	public boolean shift(double x, double y, double[] out) {
+		double[] cellX = grid.cellX(), cellY = grid.cellY();
+		double shiftX = 0, shiftY = 0, scaleFactor = 0;
+		// Only the 3x3 cells around the location can hold points within the bandwidth
+		int column = grid.column(x), row = grid.row(y);
+		int fromColumn = Math.max(column - 1, 0), toColumn = Math.min(column + 1, grid.getColumns() - 1);
+		int fromRow = Math.max(row - 1, 0), toRow = Math.min(row + 1, grid.getRows() - 1);
+		long distances = 0;
+		for (int r = fromRow; r <= toRow && fromColumn <= toColumn; r++) {
+			// The cells of a row are contiguous in the grid
+			int start = grid.cellStart(grid.cell(fromColumn, r)), end = grid.cellEnd(grid.cell(toColumn, r));
+			distances += end - start;
+			if (kernel == Kernel.FLAT) {
+				// Every weight is 1: sum the coordinates and count the points
+				for (int i = start; i < end; i++) {
+					double dx = cellX[i] - x, dy = cellY[i] - y;
+					if (dx * dx + dy * dy <= squareBandwidth) {
+						shiftX += cellX[i];
+						shiftY += cellY[i];
+						scaleFactor++;
+					}
+				}
+				continue;
+			}
+			for (int i = start; i < end; i++) {
+				double dx = cellX[i] - x, dy = cellY[i] - y;
+				double squareDistance = dx * dx + dy * dy;
+				if (squareDistance <= squareBandwidth) {
+					double weight = gaussian(squareDistance);
+					// Calculate the numerator and the denominator
+					shiftX += cellX[i] * weight;
+					shiftY += cellY[i] * weight;
+					scaleFactor += weight;
+				}
+			}
+		}
+		distanceEvaluations.add(distances);
+		if (scaleFactor == 0)
+			return false;
+		out[0] = shiftX / scaleFactor;
+		out[1] = shiftY / scaleFactor;
+		return true;
+	}
+
+	/**
+	 * Shift a location until it converges to a mode.
+	 * @param x
+	 * @param y
+	 * @param out - receives the mode
+	 * @return number of shifts
+	 */
+	public int climb(double x, double y, double[] out) {
+		double squareThreshold = convergenceThreshold * convergenceThreshold;
+		int iteration = 0;
+		while (iteration < maxIterations && shift(x, y, out)) {
+			iteration++;
+			double dx = out[0] - x, dy = out[1] - y;
+			x = out[0];
+			y = out[1];
+			if (dx * dx + dy * dy <= squareThreshold)
+				break;
+		}
+		out[0] = x;
+		out[1] = y;
+		return iteration;
+	}
+
+	/**
+	 * Cluster all points of the grid.
+	 * @return result - labels are indexed like the points of the grid's store
+	 */
+	public ClusteringResult cluster() {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.MEAN_SHIFT.begin("cluster", 0);
+		long distancesBefore = getDistanceEvaluations();
+		int[] pointIndex = grid.pointIndex();
+		int size = pointIndex.length;
+		double[] seedX = grid.cellX(), seedY = grid.cellY();
+		int numSeeds = size;
+		boolean pointSeeds = true;	// Seeds are the points in grid order, otherwise bin centers
+		if (minBinFrequency > 0) {
+			double[][] bins = binSeeds();
+			if (bins[0].length > 0) {
+				seedX = bins[0];
+				seedY = bins[1];
+				numSeeds = seedX.length;
+				pointSeeds = false;
+			}
+		}
+		double[] modeX = new double[numSeeds], modeY = new double[numSeeds];
+		int iterations = numSeeds == 0 ? 0 : pool.invoke(new ClimbTask(seedX, seedY, modeX, modeY, 0, numSeeds));
+		ClusteringResult merged = mergeModes(modeX, modeY, numSeeds, mergeTolerance, iterations);
+		int[] labels = new int[size];
+		if (pointSeeds) {
+			// Every point was a seed, in grid order
+			int[] seedLabels = merged.getLabels();
+			for (int i = 0; i < size; i++)
+				labels[pointIndex[i]] = seedLabels[i];
+		} else {
+			CenterIndex centers = new CenterIndex(merged.getNumClusters());
+			centers.build(merged.getCenterX(), merged.getCenterY());
+			CenterIndex.Query query = centers.new Query();
+			for (int i = 0; i < size; i++)
+				labels[pointIndex[i]] = query.find(grid.cellX()[i], grid.cellY()[i]);
+		}
+		phase.endIteration(getDistanceEvaluations() - distancesBefore, size, Double.NaN);
+		return new ClusteringResult(labels, merged.getCenterX(), merged.getCenterY(), iterations);
+	}
+
+	/**
+	 * Snap the points to a grid of bandwidth-sized bins and keep the centers of the bins with at least
+	 * minBinFrequency points. The bins are counted by sorting their packed coordinates.
+	 * @return x- and y-coordinates of the seeds
+	 */
+	private double[][] binSeeds() {
+		double[] x = grid.cellX(), y = grid.cellY();
+		int size = x.length;
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			long column = Math.round(x[i] / bandwidth), row = Math.round(y[i] / bandwidth);
+			keys[i] = column << 32 | (row & 0xFFFFFFFFL);
+		}
+		Arrays.parallelSort(keys);
+		double[] seedX = new double[16], seedY = new double[16];
+		int numSeeds = 0;
+		for (int start = 0, end; start < size; start = end) {
+			for (end = start + 1; end < size && keys[end] == keys[start]; end++)
+				;
+			if (end - start < minBinFrequency)
+				continue;
+			if (numSeeds == seedX.length) {
+				seedX = Arrays.copyOf(seedX, numSeeds * 2);
+				seedY = Arrays.copyOf(seedY, numSeeds * 2);
+			}
+			seedX[numSeeds] = (keys[start] >> 32) * bandwidth;
+			seedY[numSeeds] = (int) keys[start] * bandwidth;
+			numSeeds++;
+		}
+		return new double[][] {Arrays.copyOf(seedX, numSeeds), Arrays.copyOf(seedY, numSeeds)};
+	}
+
+	/**
+	 * Merge the modes of all seeds greedily: a mode joins the first cluster whose center is within the merge
+	 * tolerance, otherwise it starts a new cluster. Candidate clusters are found through a coarse grid.
+	 * @param modeX
+	 * @param modeY
+	 * @param size - number of modes
+	 * @param mergeTolerance
+	 * @param iterations - reported in the result
+	 * @return result - labels are indexed like the seeds
+	 */
+	static ClusteringResult mergeModes(double[] modeX, double[] modeY, int size, double mergeTolerance, int iterations) {
+		int[] labels = new int[size];
+		// Merge grid bounds
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			minX = Math.min(minX, modeX[i]);
+			minY = Math.min(minY, modeY[i]);
+			maxX = Math.max(maxX, modeX[i]);
+			maxY = Math.max(maxY, modeY[i]);
+		}
+		double extent = Math.max(maxX - minX, maxY - minY);
+		double cellSize = Math.max(mergeTolerance, Math.max(extent / Math.sqrt(MAX_MERGE_CELLS), Double.MIN_NORMAL));
+		int columns = size == 0 ? 1 : (int) ((maxX - minX) / cellSize) + 1;
+		int rows = size == 0 ? 1 : (int) ((maxY - minY) / cellSize) + 1;
+		int[] head = new int[columns * rows];	// First cluster of each cell, linked through next
+		Arrays.fill(head, -1);
+		int[] next = new int[16];
+		double[] centerX = new double[16], centerY = new double[16];
+		int numClusters = 0;
+		double squareTolerance = mergeTolerance * mergeTolerance;
+
+		for (int i = 0; i < size; i++) {
+			int column = (int) ((modeX[i] - minX) / cellSize), row = (int) ((modeY[i] - minY) / cellSize);
+			int cluster = -1;
+			for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1) && cluster < 0; r++) {
+				for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1) && cluster < 0; c++) {
+					for (int j = head[r * columns + c]; j >= 0; j = next[j]) {
+						double dx = centerX[j] - modeX[i], dy = centerY[j] - modeY[i];
+						if (dx * dx + dy * dy <= squareTolerance) {
+							cluster = j;
+							break;
+						}
+					}
+				}
+			}
+			if (cluster < 0) {
+				// Start a new cluster at this mode
+				if (numClusters == centerX.length) {
+					centerX = Arrays.copyOf(centerX, numClusters * 2);
+					centerY = Arrays.copyOf(centerY, numClusters * 2);
+					next = Arrays.copyOf(next, numClusters * 2);
+				}
+				cluster = numClusters++;
+				centerX[cluster] = modeX[i];
+				centerY[cluster] = modeY[i];
+				next[cluster] = head[row * columns + column];
+				head[row * columns + column] = cluster;
+			}
+			labels[i] = cluster;
+		}
+		return new ClusteringResult(labels, Arrays.copyOf(centerX, numClusters), Arrays.copyOf(centerY, numClusters), iterations);
+	}
+
+	/**
+	 * Gaussian kernel of a squared distance within the bandwidth, interpolated in the lookup table.
+	 * @param squareDistance
+	 * @return weight
+	 */
+	private double gaussian(double squareDistance) {
+		double position = squareDistance * tableScale;
+		int i = (int) position;
+		double low = GAUSSIAN_TABLE[i];
+		return low + (position - i) * (GAUSSIAN_TABLE[i + 1] - low);
+	}
+
+	/**
+	 * Climbs the seeds [from, to) and returns the largest number of shifts.
+	 */
+	private class ClimbTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private final double[] seedX, seedY, modeX, modeY;
+		private final int from, to;
+
+		ClimbTask(double[] seedX, double[] seedY, double[] modeX, double[] modeY, int from, int to) {
+			this.seedX = seedX;
+			this.seedY = seedY;
+			this.modeX = modeX;
+			this.modeY = modeY;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from > SEQUENTIAL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				ClimbTask left = new ClimbTask(seedX, seedY, modeX, modeY, from, middle);
+				left.fork();
+				int right = new ClimbTask(seedX, seedY, modeX, modeY, middle, to).compute();
+				return Math.max(left.join(), right);
+			}
+			double[] mode = new double[2];
+			int iterations = 0;
+			for (int i = from; i < to; i++) {
+				iterations = Math.max(iterations, climb(seedX[i], seedY[i], mode));
+				modeX[i] = mode[0];
+				modeY[i] = mode[1];
+			}
+			return iterations;
+		}
+	}
+}
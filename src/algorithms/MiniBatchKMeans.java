@@ -0,0 +1,154 @@
+package algorithms;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import graph.PointSource;
+import graph.PointStore;
+
+/**
+ * Headless mini-batch K-Means. Each step draws a fixed-size batch from a PointSource, assigns the batch to the
+ * nearest centers and moves every center towards its batch points with a per-center learning rate of
+ * 1 / (points seen by that center). Memory use is the batch buffers plus the centers, whatever the dataset size.
+ */
+public class MiniBatchKMeans {
+	private final PointSource source;
+	private final int numCenters, batchSize;
+	private final double[] centerX, centerY;
+	private final double[] previousX, previousY;	// Centers before the current batch
+	private final long[] centerCount;		// Points seen by each center, drives its learning rate
+	private final double[] batchX, batchY;
+	private final int[] batchLabels;
+	private final DistanceKernel kernel = DistanceKernels.get(DistanceKernel.Metric.SQUARED_EUCLIDEAN);
+	private long pointsSeen = 0;
+	private int steps = 0;
+	private double batchSse = Double.NaN;
+
+	/**
+	 * @param source
+	 * @param centerX - x-coordinates of the initial centers, copied
+	 * @param centerY - y-coordinates of the initial centers, copied
+	 * @param batchSize - number of points per batch
+	 */
+	public MiniBatchKMeans(PointSource source, double[] centerX, double[] centerY, int batchSize) {
+		this.source = source;
+		this.numCenters = centerX.length;
+		this.batchSize = batchSize;
+		this.centerX = centerX.clone();
+		this.centerY = centerY.clone();
+		this.previousX = new double[numCenters];
+		this.previousY = new double[numCenters];
+		this.centerCount = new long[numCenters];
+		this.batchX = new double[batchSize];
+		this.batchY = new double[batchSize];
+		this.batchLabels = new int[batchSize];
+	}
+
+	public double[] getCenterX() {
+		return centerX;
+	}
+
+	public double[] getCenterY() {
+		return centerY;
+	}
+
+	/**
+	 * Get the number of points drawn from the source so far.
+	 * @return pointsSeen
+	 */
+	public long getPointsSeen() {
+		return pointsSeen;
+	}
+
+	/**
+	 * Get the sum of squared distances from the points of the last batch to the centers they were assigned to.
+	 * @return SSE of the last batch, or NaN before the first step()
+	 */
+	public double getBatchSse() {
+		return batchSse;
+	}
+
+	/**
+	 * Process one batch.
+	 * @return the largest distance a center moved, or -1 if the source holds no points
+	 * @throws IOException
+	 */
+	public double step() throws IOException {
+		ClusteringMetrics.Phase phase = ClusteringMetrics.MINI_BATCH_KMEANS.begin("step", steps);
+		int count = source.next(batchX, batchY, batchSize);
+		if (count == 0)
+			return -1;
+		pointsSeen += count;
+		// Assign the whole batch against the centers of the previous step
+		double sse = 0;
+		for (int i = 0; i < count; i++) {
+			int c = nearest(batchX[i], batchY[i]);
+			double dx = batchX[i] - centerX[c], dy = batchY[i] - centerY[c];
+			sse += dx * dx + dy * dy;
+			batchLabels[i] = c;
+		}
+		batchSse = sse;
+		// Gradient step per point with the per-center learning rate
+		System.arraycopy(centerX, 0, previousX, 0, numCenters);
+		System.arraycopy(centerY, 0, previousY, 0, numCenters);
+		for (int i = 0; i < count; i++) {
+			int c = batchLabels[i];
+			double rate = 1.0 / ++centerCount[c];
+			centerX[c] += rate * (batchX[i] - centerX[c]);
+			centerY[c] += rate * (batchY[i] - centerY[c]);
+		}
+		double maxShift = 0;
+		for (int c = 0; c < numCenters; c++) {
+			double dx = centerX[c] - previousX[c], dy = centerY[c] - previousY[c];
+			maxShift = Math.max(maxShift, Math.sqrt(dx * dx + dy * dy));
+		}
+		phase.endIteration((long) count * numCenters, 0, sse);
+		steps++;
+		return maxShift;
+	}
+
+	/**
+	 * Process batches until no center moves more than the tolerance in one batch.
+	 * @param maxBatches
+	 * @param tolerance
+	 * @return number of batches processed
+	 * @throws IOException
+	 */
+	public int run(int maxBatches, double tolerance) throws IOException {
+		int batches = 0;
+		while (batches < maxBatches) {
+			double shift = step();
+			if (shift < 0)
+				break;
+			batches++;
+			if (shift <= tolerance)
+				break;
+		}
+		return batches;
+	}
+
+	/**
+	 * Label the points of an in-memory store with the current centers.
+	 * @param points
+	 * @param iterations - number of batches run, reported by the result
+	 * @return result - the centers are copies
+	 */
+	public ClusteringResult label(PointStore points, int iterations) {
+		int size = points.size();
+		double[] x = points.xs(), y = points.ys();
+		int[] labels = new int[size];
+		for (int i = 0; i < size; i++)
+			labels[i] = nearest(x[i], y[i]);
+		return new ClusteringResult(labels, Arrays.copyOf(centerX, numCenters), Arrays.copyOf(centerY, numCenters), iterations);
+	}
+
+	/**
+	 * Get the nearest center to a location.
+	 * @param x
+	 * @param y
+	 * @return center index
+	 */
+	public int nearest(double x, double y) {
+		return kernel.nearest(x, y, centerX, centerY, numCenters);
+	}
+}
@@ -0,0 +1,89 @@
+package algorithms;
+
+/**
+ * Plain Java distance kernel, one point at a time. Used when no DistanceKernelProvider accelerates a metric.
+ */
+class ScalarDistanceKernel implements DistanceKernel {
+	private final Metric metric;
+
+	ScalarDistanceKernel(Metric metric) {
+		this.metric = metric;
+	}
+
+	@Override
+	public Metric metric() {
+		return metric;
+	}
+
+	@Override
+	public double distance(double ax, double ay, double bx, double by) {
+		double dx = ax - bx, dy = ay - by;
+		switch (metric) {
+		case EUCLIDEAN:
+			return Math.sqrt(dx * dx + dy * dy);
+		case SQUARED_EUCLIDEAN:
+			return dx * dx + dy * dy;
+		case MANHATTAN:
+			return Math.abs(dx) + Math.abs(dy);
+		default:
+			return cosine(ax, ay, bx, by);
+		}
+	}
+
+	@Override
+	public void distances(double qx, double qy, double[] x, double[] y, int from, int to, double[] out) {
+		// One loop per metric so that each stays free of branches
+		switch (metric) {
+		case EUCLIDEAN:
+			for (int i = from; i < to; i++) {
+				double dx = qx - x[i], dy = qy - y[i];
+				out[i - from] = Math.sqrt(dx * dx + dy * dy);
+			}
+			break;
+		case SQUARED_EUCLIDEAN:
+			for (int i = from; i < to; i++) {
+				double dx = qx - x[i], dy = qy - y[i];
+				out[i - from] = dx * dx + dy * dy;
+			}
+			break;
+		case MANHATTAN:
+			for (int i = from; i < to; i++)
+				out[i - from] = Math.abs(qx - x[i]) + Math.abs(qy - y[i]);
+			break;
+		default:
+			for (int i = from; i < to; i++)
+				out[i - from] = cosine(qx, qy, x[i], y[i]);
+		}
+	}
+
+	@Override
+	public int nearest(double qx, double qy, double[] x, double[] y, int count) {
+		int nearest = -1;
+		double minDist = Double.POSITIVE_INFINITY;
+		if (metric == Metric.EUCLIDEAN || metric == Metric.SQUARED_EUCLIDEAN) {
+			// Squared distances are enough to compare
+			for (int i = 0; i < count; i++) {
+				double dx = qx - x[i], dy = qy - y[i];
+				double dist = dx * dx + dy * dy;
+				if (dist < minDist) {
+					minDist = dist;
+					nearest = i;
+				}
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				double dist = distance(qx, qy, x[i], y[i]);
+				if (dist < minDist) {
+					minDist = dist;
+					nearest = i;
+				}
+			}
+		}
+		return count > 0 && nearest < 0 ? 0 : nearest;
+	}
+
+	private static double cosine(double ax, double ay, double bx, double by) {
+		double norms = Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+		return norms == 0 ? 1 : 1 - (ax * bx + ay * by) / norms;
+	}
+}
@@ -0,0 +1,189 @@
+package algorithms;
+
+import java.util.Arrays;
+
+import graph.NodeCategories;
+import graphics.Brush;
+import graphics.DensityGrid;
+
+/**
+ * Compact recording of a clustering run. Each step stores only the labels that changed since the previous
+ * step (index, old label, new label) together with the centroid coordinates of that step, so memory grows with
+ * the number of reassigned points instead of the number of points per frame.
+ *
+ * Frames are rebuilt on demand by moving a cursor forwards or backwards through the recorded deltas. When the
+ * brush draws this many points as a density image, the same deltas keep a DensityGrid up to date, so a frame
+ * costs the changed labels plus the canvas cells instead of the whole dataset.
+ *
+ * Steps may be recorded on one thread while earlier steps are rendered on another.
+ */
+public class StepLog {
+	private final double[] pointX, pointY;	// Point coordinates, shared with the algorithm
+	private final int numPoints, numCenters;
+	private final int[] recordedLabels;		// Labels as of the last recorded step
+
+	// Deltas of all steps, step i owns the range [stepOffsets[i], stepOffsets[i + 1])
+	private int[] changeIndex = new int[64];
+	private int[] changeFrom = new int[64];
+	private int[] changeTo = new int[64];
+	private int numChanges = 0;
+	private int[] stepOffsets = new int[17];
+	// Centroid coordinates of all steps, step i owns the range [i * numCenters, (i + 1) * numCenters)
+	private double[] centerX, centerY;
+	private int numSteps = 0;
+
+	// Rendering cursor
+	private final int[] cursorLabels;
+	private int cursorStep = -1;
+	private DensityGrid density;	// Follows cursorLabels once density rendering is used
+
+	/**
+	 * @param pointX - x-coordinates of the clustered points
+	 * @param pointY - y-coordinates of the clustered points
+	 * @param numPoints - number of points
+	 * @param numCenters - number of centroids recorded in every step
+	 */
+	public StepLog(double[] pointX, double[] pointY, int numPoints, int numCenters) {
+		this.pointX = pointX;
+		this.pointY = pointY;
+		this.numPoints = numPoints;
+		this.numCenters = numCenters;
+		this.recordedLabels = new int[numPoints];
+		this.cursorLabels = new int[numPoints];
+		Arrays.fill(recordedLabels, NodeCategories.UNCATEGORIZED);	// Every point starts uncategorized
+		Arrays.fill(cursorLabels, NodeCategories.UNCATEGORIZED);
+		this.centerX = new double[numCenters * 16];
+		this.centerY = new double[numCenters * 16];
+	}
+
+	/**
+	 * Record a new step.
+	 * @param labels - label of every point in this step
+	 * @param centersX - x-coordinates of the centroids in this step
+	 * @param centersY - y-coordinates of the centroids in this step
+	 * @return index of the recorded step
+	 */
+	public synchronized int record(int[] labels, double[] centersX, double[] centersY) {
+		// Store the labels that differ from the previous step
+		for (int i = 0; i < numPoints; i++) {
+			if (labels[i] != recordedLabels[i]) {
+				if (numChanges == changeIndex.length)
+					growChanges();
+				changeIndex[numChanges] = i;
+				changeFrom[numChanges] = recordedLabels[i];
+				changeTo[numChanges] = labels[i];
+				numChanges++;
+				recordedLabels[i] = labels[i];
+			}
+		}
+		// Store the centroids
+		if ((numSteps + 1) * numCenters > centerX.length) {
+			centerX = Arrays.copyOf(centerX, Math.max(centerX.length * 2, (numSteps + 1) * numCenters));
+			centerY = Arrays.copyOf(centerY, centerX.length);
+		}
+		System.arraycopy(centersX, 0, centerX, numSteps * numCenters, numCenters);
+		System.arraycopy(centersY, 0, centerY, numSteps * numCenters, numCenters);
+		// Close the step
+		if (numSteps + 2 > stepOffsets.length)
+			stepOffsets = Arrays.copyOf(stepOffsets, stepOffsets.length * 2);
+		stepOffsets[numSteps + 1] = numChanges;
+		return numSteps++;
+	}
+
+	/**
+	 * Get the number of recorded steps.
+	 * @return number of steps
+	 */
+	public synchronized int getStepCount() {
+		return numSteps;
+	}
+
+	/**
+	 * Get the number of labels that changed in the given step.
+	 * @param step
+	 * @return number of changed labels
+	 */
+	public synchronized int getChangedCount(int step) {
+		return stepOffsets[step + 1] - stepOffsets[step];
+	}
+
+	/**
+	 * Estimate the bytes held by the log: deltas, centroids, label copies and the density grid if any. The point
+	 * coordinates belong to the algorithm and are not counted.
+	 * @return bytes
+	 */
+	public synchronized long getRetainedBytes() {
+		long bytes = (long) Integer.BYTES * (3L * changeIndex.length + stepOffsets.length + recordedLabels.length + cursorLabels.length);
+		bytes += (long) Double.BYTES * (centerX.length + centerY.length);
+		if (density != null)
+			bytes += density.getRetainedBytes();
+		return bytes;
+	}
+
+	/**
+	 * Get the labels of the given step. The returned array is reused by later calls.
+	 * @param step
+	 * @return labels
+	 */
+	public synchronized int[] getLabels(int step) {
+		seek(step);
+		return cursorLabels;
+	}
+
+	/**
+	 * Draw the given step: all points with their labels, then the centroids.
+	 * @param step
+	 * @param brush
+	 */
+	public synchronized void render(int step, Brush brush) {
+		seek(step);
+		brush.clear();
+		if (brush.usesDensity(numPoints)) {
+			if (density == null) {
+				density = brush.createDensityGrid(numCenters);
+				density.addAll(pointX, pointY, cursorLabels, numPoints);
+			}
+			brush.drawDensity(density);
+		} else {
+			brush.drawPoints(pointX, pointY, cursorLabels, numPoints);
+		}
+		int offset = step * numCenters;
+		for (int c = 0; c < numCenters; c++) {
+			brush.drawCenter(centerX[offset + c], centerY[offset + c], NodeCategories.getColor(c));
+		}
+	}
+
+	/**
+	 * Move the cursor to the given step by applying or reverting the recorded deltas.
+	 * @param step
+	 */
+	private void seek(int step) {
+		if (step < -1 || step >= numSteps)
+			throw new IndexOutOfBoundsException("Step " + step + " out of " + numSteps);
+		// Move forwards
+		while (cursorStep < step) {
+			cursorStep++;
+			for (int j = stepOffsets[cursorStep]; j < stepOffsets[cursorStep + 1]; j++) {
+				cursorLabels[changeIndex[j]] = changeTo[j];
+				if (density != null)
+					density.move(pointX[changeIndex[j]], pointY[changeIndex[j]], changeFrom[j], changeTo[j]);
+			}
+		}
+		// Move backwards
+		while (cursorStep > step) {
+			for (int j = stepOffsets[cursorStep]; j < stepOffsets[cursorStep + 1]; j++) {
+				cursorLabels[changeIndex[j]] = changeFrom[j];
+				if (density != null)
+					density.move(pointX[changeIndex[j]], pointY[changeIndex[j]], changeTo[j], changeFrom[j]);
+			}
+			cursorStep--;
+		}
+	}
+
+	private void growChanges() {
+		int capacity = changeIndex.length * 2;
+		changeIndex = Arrays.copyOf(changeIndex, capacity);
+		changeFrom = Arrays.copyOf(changeFrom, capacity);
+		changeTo = Arrays.copyOf(changeTo, capacity);
+	}
+}
@@ -0,0 +1,78 @@
+package application;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import algorithms.Computation;
+
+/**
+ * Runs one computation at a time off the JavaFX application thread. Submitting a new computation cancels the
+ * running one; a single worker with a queue of one keeps at most one computation waiting, the oldest waiting
+ * one is dropped since it has been superseded anyway.
+ */
+public class BackgroundRunner {
+	private static final Logger LOGGER = Logger.getLogger(BackgroundRunner.class.getName());
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+			(runnable) -> {
+				Thread thread = new Thread(runnable, "clustering-worker");
+				thread.setDaemon(true);	// Do not keep the application alive after the window is closed
+				return thread;
+			}, new ThreadPoolExecutor.DiscardOldestPolicy());
+	private Computation current;
+	private Future<?> currentFuture;
+
+	/**
+	 * Cancel the current computation and queue a new one.
+	 * @param work - the computation, it should call Computation.checkCancelled() between its steps
+	 * @param listener - receives progress reports on the worker thread, may be null
+	 * @return handle of the new computation
+	 */
+	public synchronized Computation submit(Consumer<Computation> work, Computation.Listener listener) {
+		cancel();
+		Computation computation = new Computation(listener);
+		current = computation;
+		currentFuture = executor.submit(() -> {
+			if (computation.isCancelled())
+				return;
+			try {
+				work.accept(computation);
+			} catch (CancellationException e) {
+				LOGGER.fine("Computation cancelled");
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.SEVERE, "Computation failed", e);
+			}
+		});
+		return computation;
+	}
+
+	/**
+	 * Ask the current computation to stop, without waiting for it.
+	 */
+	public synchronized void cancel() {
+		if (current != null)
+			current.cancel();
+	}
+
+	/**
+	 * Cancel the current computation and wait until it has stopped, before the data it reads is changed.
+	 */
+	public synchronized void cancelAndWait() {
+		cancel();
+		if (currentFuture == null)
+			return;
+		try {
+			currentFuture.get();
+		} catch (CancellationException | ExecutionException e) {
+			// Discarded or failed, either way it is no longer running
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
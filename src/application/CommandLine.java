@@ -0,0 +1,244 @@
+package application;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import algorithms.ClusteringResult;
+import algorithms.DistanceKernel;
+import algorithms.KMeansEngine;
+import algorithms.KMeansSeeding;
+import algorithms.KNNClassifier;
+import algorithms.KernelDensityField;
+import algorithms.MeanShiftEngine;
+import algorithms.MiniBatchKMeans;
+import graph.BinaryDataset;
+import graph.CsvDataset;
+import graph.DatasetGenerator;
+import graph.GridIndex;
+import graph.KDTree;
+import graph.PointSource;
+import graph.PointStore;
+import graph.TextFileSource;
+
+/**
+ * Headless entry point that runs one algorithm on a dataset file without JavaFX.
+ *
+ * Usage: CommandLine <algorithm> --input <file> [options]
+ *   generate   --count <N> --output <file> [--distribution blobs|anisotropic|uniform] [--clusters <C>] [--noise <F>] [--seed <S>]
+ *   kmeans     --k <K> [--mode lloyd|hamerly|elkan|kdtree|auto] [--seed <S>] [--max-iterations <N>] [--tolerance <T>]
+ *   minibatch  --k <K> [--batch <B>] [--seed <S>] [--max-iterations <N>] [--tolerance <T>]
+ *   meanshift  --bandwidth <B> [--kernel gaussian|flat] [--bin-seeding <min points per bin>] [--engine points|grid] [--cell <size>]
+ *   knn        --k <K> --queries <file> [--metric euclidean|manhattan|cosine]   (the input holds labelled points)
+ * Common options: --labels <file> --centers <file> --log-level <level>
+ * The log level is a java.util.logging level, FINE logs every iteration of the algorithms; the default INFO logs
+ * none of them. Iterations are also reported through JMX and Flight Recorder (see ClusteringMetrics).
+ * Files whose name ends with ".bin" are binary datasets (see BinaryDataset), other files are CSV or TSV datasets
+ * (see CsvDataset). Mean Shift with --engine grid climbs a Gaussian density estimate binned on a grid of the given
+ * cell size, a quarter of the bandwidth by default (see KernelDensityField), instead of the points themselves.
+ */
+public class CommandLine {
+	private static final String USAGE = "Usage: CommandLine kmeans|minibatch|meanshift|knn --input <file> [--k <K>] [--bandwidth <B>]\n"
+			+ "       CommandLine generate --count <N> --output <file> [--distribution blobs|anisotropic|uniform] [--clusters <C>] [--noise <F>] [--seed <S>]\n"
+			+ "       [--mode lloyd|hamerly|elkan|kdtree|auto] [--batch <B>] [--seed <S>] [--max-iterations <N>] [--tolerance <T>]\n"
+			+ "       [--kernel gaussian|flat] [--bin-seeding <min points per bin>] [--engine points|grid] [--cell <size>] [--queries <file>] [--metric euclidean|manhattan|cosine] [--labels <file>] [--centers <file>] [--log-level <level>]";
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		Map<String, String> options = new HashMap<>();
+		for (int i = 1; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 == args.length) {
+				System.err.println("Unexpected argument: " + args[i] + "\n" + USAGE);
+				System.exit(2);
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+		try {
+			if (options.containsKey("log-level"))
+				configureLogging(Level.parse(options.get("log-level").toUpperCase()));
+			run(args[0], options);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage() + "\n" + USAGE);
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println("[ERROR] " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void run(String algorithm, Map<String, String> options) throws IOException {
+		long seed = Long.parseLong(options.getOrDefault("seed", Long.toString(System.nanoTime())));
+		if (algorithm.equals("generate")) {
+			int count = Integer.parseInt(required(options, "count"));
+			DatasetGenerator generator = new DatasetGenerator(seed, 1000, 650);
+			generator.setDistribution(DatasetGenerator.Distribution.valueOf(options.getOrDefault("distribution", "blobs").toUpperCase()));
+			if (options.containsKey("clusters"))
+				generator.setNumClusters(Integer.parseInt(options.get("clusters")));
+			generator.setNoiseFraction(Double.parseDouble(options.getOrDefault("noise", "0")));
+			long start = System.nanoTime();
+			Path output = Paths.get(required(options, "output"));
+			if (isBinary(output)) {
+				PointStore points = new PointStore(Math.max(1, count));
+				generator.generate(points, count);
+				BinaryDataset.write(output, points);
+			} else {
+				generator.write(output, count);
+			}
+			System.out.printf("[INFO] generate: %d points in %d clusters with seed %d, %.1f ms%n",
+					count, generator.getNumClusters(), seed, (System.nanoTime() - start) / 1e6);
+			return;
+		}
+		Path input = Paths.get(required(options, "input"));
+		int maxIterations = Integer.parseInt(options.getOrDefault("max-iterations", "100"));
+		double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "1e-3"));
+
+		if (algorithm.equals("minibatch")) {
+			// Stream the input so that memory stays bounded by the batch size
+			int k = Integer.parseInt(required(options, "k"));
+			int batchSize = Integer.parseInt(options.getOrDefault("batch", "1024"));
+			long start = System.nanoTime();
+			BinaryDataset dataset = isBinary(input) ? BinaryDataset.open(input) : null;
+			try (PointSource source = dataset != null ? dataset.source() : new TextFileSource(input)) {
+				// Seed with K-Means++ on a first batch
+				PointStore sample = new PointStore(batchSize);
+				double[] x = new double[batchSize], y = new double[batchSize];
+				int count = source.next(x, y, batchSize);
+				for (int i = 0; i < count; i++)
+					sample.add(x[i], y[i], -1);
+				checkRange("k", k, 1, count);
+				double[] centerX = new double[k], centerY = new double[k];
+				KMeansSeeding.plusPlus(sample, k, seed, centerX, centerY);
+				MiniBatchKMeans miniBatch = new MiniBatchKMeans(source, centerX, centerY, batchSize);
+				int batches = miniBatch.run(maxIterations, tolerance);
+				report("minibatch", 0, System.nanoTime() - start, batches, k);
+				System.out.println("[INFO] Points drawn: " + miniBatch.getPointsSeen());
+				if (source instanceof TextFileSource && ((TextFileSource) source).getSkippedLines() > 0)
+					System.out.println("[INFO] Lines skipped: " + ((TextFileSource) source).getSkippedLines());
+				if (options.containsKey("centers"))
+					CsvDataset.writeCenters(Paths.get(options.get("centers")), miniBatch.getCenterX(), miniBatch.getCenterY());
+			} finally {
+				if (dataset != null)
+					dataset.close();
+			}
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<String> labelNames = new ArrayList<>();	// Filled if the input has non-integer labels
+		PointStore points = read(input, labelNames);
+		long loadTime = System.nanoTime() - start;
+		System.out.println("[INFO] Loaded " + points.size() + " points from " + input);
+		start = System.nanoTime();
+		ClusteringResult result;
+		switch (algorithm) {
+		case "kmeans": {
+			int k = Integer.parseInt(required(options, "k"));
+			checkRange("k", k, 1, points.size());
+			double[] centerX = new double[k], centerY = new double[k];
+			KMeansSeeding.seed(points, k, seed, centerX, centerY);
+			KMeansEngine engine = new KMeansEngine(points, centerX, centerY);
+			String mode = options.getOrDefault("mode", "auto");
+			engine.setMode(mode.equals("auto") ? KMeansEngine.acceleratedMode(k) : KMeansEngine.Mode.valueOf(mode.toUpperCase()));
+			result = engine.run(maxIterations, tolerance);
+			report(algorithm, loadTime, System.nanoTime() - start, result.getIterations(), result.getNumClusters());
+			System.out.println("[INFO] Distance computations: " + engine.getDistanceComputations() + ", avoided: " + engine.getDistanceComputationsAvoided());
+			break;
+		}
+		case "meanshift": {
+			double bandwidth = Double.parseDouble(required(options, "bandwidth"));
+			checkPositive("bandwidth", bandwidth);
+			String engineName = options.getOrDefault("engine", "points");
+			if (engineName.equals("grid")) {
+				double cellSize = Double.parseDouble(options.getOrDefault("cell", Double.toString(bandwidth / 4)));
+				checkPositive("cell", cellSize);
+				KernelDensityField field = new KernelDensityField(points, cellSize, bandwidth);
+				result = field.cluster();
+				report(algorithm, loadTime, System.nanoTime() - start, result.getIterations(), result.getNumClusters());
+				System.out.println("[INFO] Density grid: " + field.getColumns() + " x " + field.getRows() + " nodes, cell " + field.getCellSize());
+				break;
+			} else if (!engineName.equals("points")) {
+				throw new IllegalArgumentException("Unknown Mean Shift engine: " + engineName);
+			}
+			MeanShiftEngine engine = new MeanShiftEngine(new GridIndex(points, bandwidth));
+			engine.setKernel(MeanShiftEngine.Kernel.valueOf(options.getOrDefault("kernel", "gaussian").toUpperCase()));
+			engine.setBinSeeding(Integer.parseInt(options.getOrDefault("bin-seeding", "0")));
+			result = engine.cluster();
+			report(algorithm, loadTime, System.nanoTime() - start, result.getIterations(), result.getNumClusters());
+			break;
+		}
+		case "knn": {
+			int k = Integer.parseInt(required(options, "k"));
+			checkRange("k", k, 1, points.size());
+			PointStore queries = read(Paths.get(required(options, "queries")), null);
+			KNNClassifier classifier = new KNNClassifier(points, new KDTree(points), k);
+			classifier.setMetric(DistanceKernel.Metric.valueOf(options.getOrDefault("metric", "euclidean").toUpperCase()));
+			int[] labels = classifier.classify(queries.xs(), queries.ys(), queries.size());
+			System.out.printf("[INFO] knn: load %.1f ms, classified %d queries in %.1f ms%n",
+					loadTime / 1e6, queries.size(), (System.nanoTime() - start) / 1e6);
+			if (options.containsKey("labels"))
+				CsvDataset.writeLabels(Paths.get(options.get("labels")), queries, labels, labelNames.isEmpty() ? null : labelNames);
+			return;
+		}
+		default:
+			throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+		}
+		if (options.containsKey("labels"))
+			CsvDataset.writeLabels(Paths.get(options.get("labels")), points, result.getLabels(), null);
+		if (options.containsKey("centers"))
+			CsvDataset.writeCenters(Paths.get(options.get("centers")), result.getCenterX(), result.getCenterY());
+	}
+
+	/**
+	 * Read a binary dataset if the file name ends with ".bin", a CSV or TSV dataset otherwise.
+	 */
+	private static PointStore read(Path path, List<String> labelNames) throws IOException {
+		return isBinary(path) ? BinaryDataset.read(path) : CsvDataset.read(path, labelNames, ForkJoinPool.commonPool());
+	}
+
+	private static boolean isBinary(Path path) {
+		return path.getFileName().toString().endsWith(".bin");
+	}
+
+	/**
+	 * Set the level of the root logger and its console handler.
+	 */
+	private static void configureLogging(Level level) {
+		Logger root = Logger.getLogger("");
+		root.setLevel(level);
+		for (Handler handler : root.getHandlers())
+			handler.setLevel(level);
+	}
+
+	private static String required(Map<String, String> options, String name) {
+		String value = options.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing option --" + name);
+		return value;
+	}
+
+	private static void checkRange(String name, int value, int min, int max) {
+		if (value < min || value > max)
+			throw new IllegalArgumentException("Option --" + name + " must be between " + min + " and " + max + ", got " + value);
+	}
+
+	private static void checkPositive(String name, double value) {
+		if (!(value > 0) || Double.isInfinite(value))
+			throw new IllegalArgumentException("Option --" + name + " must be a positive number, got " + value);
+	}
+
+	private static void report(String algorithm, long loadNanos, long runNanos, int iterations, int clusters) {
+		System.out.printf("[INFO] %s: load %.1f ms, run %.1f ms, %d iterations, %d clusters%n",
+				algorithm, loadNanos / 1e6, runNanos / 1e6, iterations, clusters);
+	}
+}
@@ -1,20 +1,30 @@
 package application;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Supplier;
+
 import algorithms.KMeans;
 import algorithms.KNN;
+import algorithms.KernelDensityField;
 import algorithms.MeanShift;
 import graph.Graph;
 import graph.Node;
-import graphics.Animation;
 import graphics.Brush;
+import graphics.PlaybackAnimation;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.TabPane;
@@ -22,12 +32,24 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
 import javafx.fxml.FXMLLoader;
 
 public class Main extends Application {
+	private static final int MAX_NODES = 10_000_000;
+	private static final int MAX_CENTERS = 10_000;
+	private static final double DENSITY_CELL_SIZE = 2;	// Node spacing of the Mean Shift density grid, in pixels
+	private static final long MAX_CACHE_BYTES = 512L << 20;	// Budget of the finished runs, at most a quarter of the heap
 	private static Graph graph = new Graph();
 	private static Scene scene = null;
-	private Animation currentAnimation = null;
+	private PlaybackAnimation currentAnimation = null;
+	private final BackgroundRunner runner = new BackgroundRunner();	// Computes the animations off the application thread
+	private final ResultCache<PlaybackAnimation> results = new ResultCache<>(Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 4),
+			PlaybackAnimation::getRetainedBytes);
+	private KernelDensityField densityField;	// Reused across bandwidths while the graph version is unchanged
+	private long densityFieldVersion;
+	private final long seed = new Random().nextLong();	// Seed of the K-Means runs, fixed so that repeated runs are cached
+	private Text description;
 
 	@Override
 	public void start(Stage primaryStage) {
@@ -46,6 +68,7 @@ public class Main extends Application {
 			Canvas canvasKNN = (Canvas) scene.lookup("#canvasKNN");
 			Canvas canvasKMeans = (Canvas) scene.lookup("#canvasKMeans");
 			Canvas canvasMeanShift = (Canvas) scene.lookup("#canvasMeanShift");
+			description = (Text) scene.lookup("#description");
 			
 			// Disable algorithm canvases
 			canvasKNN.setVisible(false);
@@ -62,7 +85,7 @@ public class Main extends Application {
 					// Dialog config
 					TextInputDialog getNumberNodes = new TextInputDialog();
 					getNumberNodes.setTitle("Get Number of Nodes Dialog");
-					getNumberNodes.setHeaderText("Enter number of nodes (must be an integer between 200 and 1000 inclusive)");
+					getNumberNodes.setHeaderText("Enter number of nodes (an integer between 1 and " + MAX_NODES + "), optionally followed by a seed");
 					getNumberNodes.show();
 					// Input check: disable OK button if input is invalid
 					Button okButton = (Button) getNumberNodes.getDialogPane().lookupButton(ButtonType.OK);
@@ -73,33 +96,92 @@ public class Main extends Application {
 					okButton.setOnAction(new EventHandler<ActionEvent>() {
 						@Override
 						public void handle(ActionEvent arg0) {
+							// Stop the running computation before the graph changes
+							runner.cancelAndWait();
+							if (currentAnimation != null)
+								currentAnimation.getPlayer().pause();
 							// Clear the previous graph and canvas
 							graph.clear();
 							brushGraph.clear();
 							canvasKMeans.setVisible(false);
 							canvasKNN.setVisible(false);
 							canvasMeanShift.setVisible(false);
-							// Reset the animation
+							// Reset the animation, the cached runs belong to the previous graph
 							currentAnimation = null;
+							results.clear();
+							densityField = null;
 							// Generate new graph and draw it
-							graph.generate(Integer.parseInt(inputField.getText()), 1000, 650);
-							brushGraph.drawGraph(graph.getNodes());
+							String[] input = inputField.getText().trim().split("\\s+");
+							if (input.length > 1)
+								graph.generate(Integer.parseInt(input[0]), 1000, 650, Long.parseLong(input[1]));
+							else
+								graph.generate(Integer.parseInt(input[0]), 1000, 650);
+							brushGraph.drawGraph(graph);
 						}
 					});
 				}
 				/**
-				 * Check whether the dialog input is an integer or not.
+				 * Check whether the dialog input is a number of nodes, optionally followed by a seed.
 				 * @param text
-				 * @return true - if text is integer
+				 * @return true - if text is valid
 				 */
 				private boolean isValid(String text) {
+					String[] input = text.trim().split("\\s+");
 					int number = 0;
 					try {
-						number = Integer.parseInt(text);
+						number = Integer.parseInt(input[0]);
+						if (input.length > 1)
+							Long.parseLong(input[1]);
 					} catch (Exception e) {
 						return false;
 					}
-					return (number >= 200 && number <= 1000);
+					return (input.length <= 2 && number >= 1 && number <= MAX_NODES);
+				}
+			});
+			
+			// Implementation of Load Graph and Save Graph button functions
+			FileChooser datasetChooser = new FileChooser();
+			datasetChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Binary dataset (*.bin)", "*.bin"),
+					new FileChooser.ExtensionFilter("CSV or TSV dataset (*.csv, *.tsv)", "*.csv", "*.tsv"));
+			Button btnLoadGraph = (Button) scene.lookup("#btnLoadGraph");
+			btnLoadGraph.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent arg0) {
+					File file = datasetChooser.showOpenDialog(primaryStage);
+					if (file == null)
+						return;
+					// Stop the running computation before the graph changes
+					runner.cancelAndWait();
+					if (currentAnimation != null)
+						currentAnimation.getPlayer().pause();
+					currentAnimation = null;
+					results.clear();
+					densityField = null;
+					canvasKMeans.setVisible(false);
+					canvasKNN.setVisible(false);
+					canvasMeanShift.setVisible(false);
+					brushGraph.clear();
+					try {
+						graph.load(file.toPath());
+					} catch (IOException e) {
+						graph.clear();
+						new Alert(AlertType.ERROR, "Cannot load " + file + ": " + e.getMessage()).show();
+					}
+					brushGraph.drawGraph(graph);
+				}
+			});
+			Button btnSaveGraph = (Button) scene.lookup("#btnSaveGraph");
+			btnSaveGraph.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent arg0) {
+					File file = datasetChooser.showSaveDialog(primaryStage);
+					if (file == null)
+						return;
+					try {
+						graph.save(file.toPath());
+					} catch (IOException e) {
+						new Alert(AlertType.ERROR, "Cannot save " + file + ": " + e.getMessage()).show();
+					}
 				}
 			});
 			
@@ -132,7 +214,9 @@ public class Main extends Application {
 							brushKNN.clear();
 							canvasKNN.setOnMouseClicked((event) -> {
 								allowClick(brushKNN, event);
-								currentAnimation = new KNN(Integer.parseInt(inputField.getText()), graph, brushKNN); // Create new animation for Mean Shift clustering
+								int k = Integer.parseInt(inputField.getText());
+								ResultCache.Key key = ResultCache.key(graph.getVersion(), "knn", 0, k, event.getX(), event.getY());
+								launch(key, () -> new KNN(k, graph, brushKNN)); // Create new animation for KNN
 							});
 						}
 					});
@@ -146,7 +230,7 @@ public class Main extends Application {
 					// Dialog config
 					TextInputDialog getKDialog = new TextInputDialog();
 					getKDialog.setTitle("Get K-value Dialog");
-					getKDialog.setHeaderText("Enter K-value (must be an integer between 1 and 6)");
+					getKDialog.setHeaderText("Enter K-value (must be an integer between 1 and " + maxCenters() + ")");
 					getKDialog.show();
 					// Input check: disable OK button if input is invalid
 					Button okButton = (Button) getKDialog.getDialogPane().lookupButton(ButtonType.OK);
@@ -165,13 +249,15 @@ public class Main extends Application {
 							// Create new brush for current algorithm canvas
 							Brush brushKMeans = new Brush(canvasKMeans.getGraphicsContext2D(), canvasKMeans.getWidth(), canvasKMeans.getHeight());
 							brushKMeans.clear();
+							int k = Integer.parseInt(inputField.getText());
+							ResultCache.Key key = ResultCache.key(graph.getVersion(), "kmeans", seed, k);
 							try {
 								Node uncategorizedNode = graph.getUncategorizedNode();
 								brushGraph.clearPoint(uncategorizedNode.getX(), uncategorizedNode.getY());							// Clear graph canvas' uncategorized node if exists
-								currentAnimation = new KMeans(Integer.parseInt(inputField.getText()), graph, brushKMeans);			// Create new animation for K-Means Clustering
+								launch(key, () -> new KMeans(k, graph, brushKMeans, seed));			// Create new animation for K-Means Clustering
 							}
 							catch (NullPointerException npe) {
-								currentAnimation = new KMeans(Integer.parseInt(inputField.getText()), graph, brushKMeans);			// Create new animation for K-Means Clustering
+								launch(key, () -> new KMeans(k, graph, brushKMeans, seed));			// Create new animation for K-Means Clustering
 							}
 						}
 					});
@@ -183,7 +269,7 @@ public class Main extends Application {
 					} catch (Exception e) {
 						return false;
 					}
-					return (number >= 1 && number <= 6);
+					return (number >= 1 && number <= maxCenters());
 				}
 			});
 			// Implementation of MeanShift button function
@@ -194,7 +280,7 @@ public class Main extends Application {
 					// Dialog config
 					TextInputDialog getBandwidthDialog = new TextInputDialog();
 					getBandwidthDialog.setTitle("Get Bandwidth Dialog");
-					getBandwidthDialog.setHeaderText("Enter bandwidth value (must be an integer)");
+					getBandwidthDialog.setHeaderText("Enter bandwidth value (must be an integer), optionally followed by \"grid\" to climb a smoothed density grid");
 					getBandwidthDialog.show();
 					// Input check: disable OK button if input is invalid
 					Button okButton = (Button) getBandwidthDialog.getDialogPane().lookupButton(ButtonType.OK);
@@ -215,11 +301,32 @@ public class Main extends Application {
 							brushMeanShift.clear();
 							canvasMeanShift.setOnMouseClicked((event) -> {
 								allowClick(brushMeanShift, event);
-								currentAnimation = new MeanShift(Integer.parseInt(inputField.getText()), graph, brushMeanShift);	// Create new animation for Mean Shift clustering
+								String[] input = inputField.getText().trim().split("\\s+");
+								int bandwidth = Integer.parseInt(input[0]);
+								boolean grid = input.length > 1;
+								ResultCache.Key key = ResultCache.key(graph.getVersion(), grid ? "meanshift-grid" : "meanshift", 0, bandwidth, event.getX(), event.getY());
+								if (grid)
+									launch(key, () -> new MeanShift(bandwidth, graph, brushMeanShift, () -> densityField(bandwidth)));
+								else
+									launch(key, () -> new MeanShift(bandwidth, graph, brushMeanShift));	// Create new animation for Mean Shift clustering
 							});
 						}
 					});
 				}
+				/**
+				 * Check whether the dialog input is a bandwidth, optionally followed by "grid".
+				 * @param text
+				 * @return true - if text is valid
+				 */
+				private boolean isValid(String text) {
+					String[] input = text.trim().split("\\s+");
+					try {
+						Integer.parseInt(input[0]);
+					} catch (Exception e) {
+						return false;
+					}
+					return input.length == 1 || (input.length == 2 && input[1].equalsIgnoreCase("grid"));
+				}
 			});
 			
 			// Implementation of Previous Step button function
@@ -283,6 +390,7 @@ public class Main extends Application {
 			btnStop.setOnAction(new EventHandler<ActionEvent>() {
 				@Override
 				public void handle(ActionEvent arg0) {
+					runner.cancel();
 					currentAnimation.stop();
 					btnStart.setVisible(true);
 					btnPause.setVisible(false);
@@ -309,6 +417,59 @@ public class Main extends Application {
 		return true;
 	}
 	
+	/**
+	 * Get the largest K accepted for K-Means: MAX_CENTERS, and no more centers than points.
+	 * @return largest K
+	 */
+	private static int maxCenters() {
+		return Math.max(1, Math.min(MAX_CENTERS, graph.getPoints().size()));
+	}
+	
+	/**
+	 * Make the run with the given key current. A finished run is taken from the cache and rewound; otherwise a new
+	 * animation computes its frames in the background and is cached once it completes. Frames can be played as
+	 * soon as they are recorded and the progress is shown in the description text.
+	 * @param key - graph version, algorithm, parameters and seed of the run
+	 * @param create - creates the animation if the run is not cached
+	 */
+	private void launch(ResultCache.Key key, Supplier<PlaybackAnimation> create) {
+		if (currentAnimation != null)
+			currentAnimation.getPlayer().pause();
+		results.retainVersion(graph.getVersion());	// Runs on an older graph, for instance before a KNN node was added
+		PlaybackAnimation cached = results.get(key);
+		if (cached != null) {
+			runner.cancel();
+			currentAnimation = cached;
+			cached.getPlayer().stop();
+			description.setText("Cached result, " + cached.getPlayer().getFrameCount() + " steps");
+			return;
+		}
+		PlaybackAnimation animation = create.get();
+		currentAnimation = animation;
+		runner.submit((computation) -> {
+			animation.run(computation);
+			results.put(key, animation);	// Only reached if the run was not cancelled
+		}, (message, fraction) -> Platform.runLater(() -> {
+			description.setText(fraction < 0 ? message : String.format("%s (%.0f%%)", message, fraction * 100));
+		}));
+	}
+	
+	/**
+	 * Get the density grid of the graph smoothed with the given bandwidth. The points are binned again only when
+	 * the graph has changed; a new bandwidth only smooths the bins again.
+	 * @param bandwidth
+	 * @return density field
+	 */
+	private synchronized KernelDensityField densityField(int bandwidth) {
+		if (densityField == null || densityFieldVersion != graph.getVersion()) {
+			densityField = new KernelDensityField(graph.getPoints(), DENSITY_CELL_SIZE, bandwidth);
+			densityFieldVersion = graph.getVersion();
+		} else if (densityField.getBandwidth() != bandwidth) {
+			densityField.setBandwidth(bandwidth);
+		}
+		return densityField;
+	}
+	
 	private void allowClick(Brush brush, MouseEvent event) {
 		// Get old uncategorized node and clear it from canvas
 		try {
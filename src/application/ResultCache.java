@@ -0,0 +1,177 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Least recently used cache of finished runs, bounded by the estimated bytes of its values rather than their
+ * number. A run is identified by the graph version it was computed on, the algorithm, its parameters and its
+ * seed, so a run on an unchanged graph with the same inputs is found again. Entries of older graph versions can
+ * never be hit again and may hold on to replaced point arrays that their estimate does not count, so the owner
+ * drops them with retainVersion() whenever the graph may have changed. A value larger than the whole budget is not
+ * cached.
+ *
+ * Safe to use from several threads.
+ * @param <V> - type of the cached runs
+ */
+public class ResultCache<V> {
+	private static final Logger LOGGER = Logger.getLogger(ResultCache.class.getName());
+	private final long maxBytes;
+	private final ToLongFunction<V> sizer;
+	private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);	// Access order
+	private long bytes = 0;
+	private long hits = 0, misses = 0;
+
+	/**
+	 * @param maxBytes - budget for the estimated size of all values
+	 * @param sizer - estimates the bytes retained by a value
+	 */
+	public ResultCache(long maxBytes, ToLongFunction<V> sizer) {
+		this.maxBytes = maxBytes;
+		this.sizer = sizer;
+	}
+
+	/**
+	 * Build the key of a run.
+	 * @param version - version of the graph the run reads
+	 * @param algorithm
+	 * @param seed - seed of the random choices of the run, 0 if it makes none
+	 * @param parameters - every other input of the run
+	 * @return key
+	 */
+	public static Key key(long version, String algorithm, long seed, double... parameters) {
+		return new Key(version, algorithm, seed, parameters);
+	}
+
+	/**
+	 * Get a cached run and mark it as the most recently used.
+	 * @param key
+	 * @return run, or null if it is not cached
+	 */
+	public synchronized V get(Key key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		LOGGER.fine(() -> "Cache hit for " + key);
+		return entry.value;
+	}
+
+	/**
+	 * Cache a run, evicting the least recently used runs until the budget is met.
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(Key key, V value) {
+		long size = sizer.applyAsLong(value);
+		Entry<V> previous = entries.remove(key);
+		if (previous != null)
+			bytes -= previous.bytes;
+		if (size > maxBytes) {
+			LOGGER.fine(() -> "Not caching " + key + ", " + size + " bytes exceed the budget of " + maxBytes);
+			return;
+		}
+		Iterator<Entry<V>> eldest = entries.values().iterator();
+		while (bytes + size > maxBytes && eldest.hasNext()) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+		}
+		entries.put(key, new Entry<>(value, size));
+		bytes += size;
+		LOGGER.fine(() -> "Cached " + key + ", " + size + " bytes, " + bytes + " bytes in " + entries.size() + " runs");
+	}
+
+	/**
+	 * Remove the runs computed on any other graph version.
+	 * @param version - current version of the graph
+	 */
+	public synchronized void retainVersion(long version) {
+		Iterator<Map.Entry<Key, Entry<V>>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry<V>> entry = iterator.next();
+			if (entry.getKey().version != version) {
+				bytes -= entry.getValue().bytes;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all runs.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the estimated bytes of all cached runs.
+	 * @return bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Identity of a run: graph version, algorithm, seed and parameters.
+	 */
+	public static final class Key {
+		private final long version, seed;
+		private final String algorithm;
+		private final double[] parameters;
+
+		private Key(long version, String algorithm, long seed, double[] parameters) {
+			this.version = version;
+			this.algorithm = algorithm;
+			this.seed = seed;
+			this.parameters = parameters.clone();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return version == key.version && seed == key.seed && algorithm.equals(key.algorithm)
+					&& Arrays.equals(parameters, key.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((Long.hashCode(version) * 31 + algorithm.hashCode()) * 31 + Long.hashCode(seed)) * 31 + Arrays.hashCode(parameters);
+		}
+
+		@Override
+		public String toString() {
+			return algorithm + Arrays.toString(parameters) + " seed " + seed + " on graph version " + version;
+		}
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long bytes;
+
+		Entry(V value, long bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+	}
+}
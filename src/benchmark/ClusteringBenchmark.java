@@ -0,0 +1,213 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import algorithms.DistanceKernel;
+import algorithms.DistanceKernels;
+import algorithms.KMeansEngine;
+import algorithms.KMeansSeeding;
+import algorithms.KNNClassifier;
+import algorithms.KernelDensityField;
+import algorithms.MeanShiftEngine;
+import graph.DatasetGenerator;
+import graph.Graph;
+import graph.GridIndex;
+import graph.KDTree;
+import graph.PointStore;
+
+/**
+ * Headless benchmark harness for the clustering cores. Every case is warmed up, then timed over repeated
+ * operations; the report gives throughput, mean latency per operation and the allocation rate of all threads,
+ * so regressions in the hot loops show up without the JavaFX front end.
+ *
+ * Usage: ClusteringBenchmark [filter] [maxSize]
+ *   filter  - only run the cases whose name contains this text
+ *   maxSize - largest dataset size, 1000000 by default
+ */
+public class ClusteringBenchmark {
+	private static final int[] SIZES = {1_000, 10_000, 100_000, 1_000_000};
+	private static final int[] K_VALUES = {3, 6, 20, 1000};
+	private static final int LARGE_K = 256;	// K from which the KD-tree mode is measured too
+	private static final int[] KNN_K_VALUES = {1, 7, 31};
+	private static final int[] BANDWIDTHS = {20, 50};
+	private static final double FIELD_CELL_SIZE = 2;	// Grid spacing of the density field cases
+	private static final int[] KERNEL_SIZES = {16, 256, 4096};	// Points per distance kernel call
+	private static final int QUERIES = 1_000;		// Queries per KNN and Mean Shift operation
+	private static final long WARMUP_NANOS = 1_000_000_000L, MEASURE_NANOS = 2_000_000_000L;
+	private static final int MIN_OPERATIONS = 5;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : SIZES[SIZES.length - 1];
+		System.out.printf("%-52s %12s %14s %16s %12s%n", "case", "ops/s", "ms/op", "alloc bytes/op", "alloc MB/s");
+		DistanceKernel.Metric squared = DistanceKernel.Metric.SQUARED_EUCLIDEAN;
+		for (int count : KERNEL_SIZES) {
+			run("kernel.nearest.scalar" + QUERIES + "[n=" + count + "]", filter, kernelNearest(DistanceKernels.scalar(squared), count));
+			run("kernel.nearest.preferred" + QUERIES + "[n=" + count + "]", filter, kernelNearest(DistanceKernels.get(squared), count));
+		}
+		for (int size : SIZES) {
+			if (size > maxSize)
+				break;
+			for (String layout : new String[] {"clustered", "uniform"}) {
+				PointStore points = dataset(size, layout.equals("clustered"), 42);
+				String suffix = "[n=" + size + "," + layout + "]";
+				for (int k : K_VALUES) {
+					run("kmeans.iteration.lloyd" + suffix + "[K=" + k + "]", filter, kMeansIteration(points, k, KMeansEngine.Mode.LLOYD));
+					run("kmeans.iteration.hamerly" + suffix + "[K=" + k + "]", filter, kMeansIteration(points, k, KMeansEngine.Mode.HAMERLY));
+					if (k >= LARGE_K)
+						run("kmeans.iteration.kdtree" + suffix + "[K=" + k + "]", filter, kMeansIteration(points, k, KMeansEngine.Mode.KDTREE));
+					run("kmeans.run" + suffix + "[K=" + k + "]", filter, kMeansRun(points, k));
+				}
+				KDTree index = new KDTree(points);
+				for (int k : KNN_K_VALUES)
+					run("knn.classify" + QUERIES + suffix + "[k=" + k + "]", filter, knnClassify(points, index, k));
+				for (int bandwidth : BANDWIDTHS) {
+					run("meanshift.climb" + QUERIES + suffix + "[bw=" + bandwidth + "]", filter, meanShiftClimb(points, bandwidth));
+					KernelDensityField field = new KernelDensityField(points, FIELD_CELL_SIZE, bandwidth);
+					run("meanshift.field.smooth" + suffix + "[bw=" + bandwidth + "]", filter, () -> field.setBandwidth(bandwidth));
+					run("meanshift.field.cluster" + suffix + "[bw=" + bandwidth + "]", filter, field::cluster);
+				}
+			}
+			run("graph.generate[n=" + size + "]", filter, () -> new Graph().generate(size, 1000, 650, 42));
+		}
+	}
+
+	/**
+	 * One K-Means iteration (assignment and update) on an engine that persists across operations, so the
+	 * accelerated modes are measured with their bounds warm.
+	 */
+	private static Runnable kMeansIteration(PointStore points, int k, KMeansEngine.Mode mode) {
+		double[] centerX = new double[k], centerY = new double[k];
+		KMeansSeeding.plusPlus(points, k, 7, centerX, centerY);
+		KMeansEngine engine = new KMeansEngine(points, centerX, centerY);
+		engine.setMode(mode);
+		return () -> {
+			engine.assign();
+			engine.update();
+		};
+	}
+
+	/**
+	 * A complete K-Means run from K-Means++ seeds to convergence.
+	 */
+	private static Runnable kMeansRun(PointStore points, int k) {
+		return () -> {
+			double[] centerX = new double[k], centerY = new double[k];
+			KMeansSeeding.seed(points, k, 7, centerX, centerY);
+			KMeansEngine engine = new KMeansEngine(points, centerX, centerY);
+			engine.setMode(KMeansEngine.acceleratedMode(k));
+			engine.run(100, 1e-3);
+		};
+	}
+
+	/**
+	 * Nearest of count random points for QUERIES queries, the K-Means assignment of one point per query.
+	 */
+	private static Runnable kernelNearest(DistanceKernel kernel, int count) {
+		SplittableRandom random = new SplittableRandom(42);
+		double[] x = new double[count], y = new double[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = random.nextDouble() * 1000;
+			y[i] = random.nextDouble() * 650;
+		}
+		double[] queryX = new double[QUERIES], queryY = new double[QUERIES];
+		for (int q = 0; q < QUERIES; q++) {
+			queryX[q] = random.nextDouble() * 1000;
+			queryY[q] = random.nextDouble() * 650;
+		}
+		int[] nearest = new int[QUERIES];
+		return () -> {
+			for (int q = 0; q < QUERIES; q++)
+				nearest[q] = kernel.nearest(queryX[q], queryY[q], x, y, count);
+		};
+	}
+
+	private static Runnable knnClassify(PointStore points, KDTree index, int k) {
+		KNNClassifier classifier = new KNNClassifier(points, index, k);
+		double[] x = new double[QUERIES], y = new double[QUERIES];
+		queries(points, x, y);
+		return () -> classifier.classify(x, y, QUERIES);
+	}
+
+	private static Runnable meanShiftClimb(PointStore points, int bandwidth) {
+		MeanShiftEngine engine = new MeanShiftEngine(new GridIndex(points, bandwidth));
+		double[] x = new double[QUERIES], y = new double[QUERIES];
+		queries(points, x, y);
+		double[] mode = new double[2];
+		return () -> {
+			for (int i = 0; i < QUERIES; i++)
+				engine.climb(x[i], y[i], mode);
+		};
+	}
+
+	/**
+	 * Warm up and measure one case, then print its line of the report.
+	 */
+	private static void run(String name, String filter, Runnable operation) {
+		if (!name.contains(filter))
+			return;
+		// Warm up
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < WARMUP_NANOS)
+			operation.run();
+		// Measure
+		long allocatedBefore = allocatedBytes();
+		int operations = 0;
+		start = System.nanoTime();
+		long elapsed;
+		do {
+			operation.run();
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < MEASURE_NANOS || operations < MIN_OPERATIONS);
+		long allocated = allocatedBytes() - allocatedBefore;
+		double seconds = elapsed / 1e9;
+		System.out.printf("%-52s %12.2f %14.4f %16d %12.1f%n", name, operations / seconds, elapsed / 1e6 / operations,
+				allocated / operations, allocated / seconds / (1 << 20));
+	}
+
+	/**
+	 * Sum of the bytes allocated by all live threads, including the fork/join workers.
+	 */
+	private static long allocatedBytes() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+			return 0;
+		long[] allocated = ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(THREADS.getAllThreadIds());
+		return Arrays.stream(allocated).filter((bytes) -> bytes > 0).sum();
+	}
+
+	/**
+	 * Points over a 1000x650 canvas: Gaussian blobs around 8 random centers, or uniform noise.
+	 */
+	private static PointStore dataset(int size, boolean clustered, long seed) {
+		DatasetGenerator generator = new DatasetGenerator(seed, 1000, 650);
+		generator.setNumClusters(8);
+		generator.setSpread(40);
+		generator.setDistribution(clustered ? DatasetGenerator.Distribution.BLOBS : DatasetGenerator.Distribution.UNIFORM);
+		PointStore points = new PointStore(size);
+		generator.generate(points, size);
+		return points;
+	}
+
+	/**
+	 * Query locations drawn from the dataset, slightly jittered.
+	 */
+	private static void queries(PointStore points, double[] x, double[] y) {
+		SplittableRandom random = new SplittableRandom(99);
+		for (int i = 0; i < x.length; i++) {
+			int index = random.nextInt(points.size());
+			x[i] = points.getX(index) + gaussian(random);
+			y[i] = points.getY(index) + gaussian(random);
+		}
+	}
+
+	private static double gaussian(SplittableRandom random) {
+		// Box-Muller transform
+		return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+}
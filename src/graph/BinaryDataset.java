@@ -0,0 +1,282 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped binary dataset file.
+ *
+ * Layout, little-endian:
+ *   header, 64 bytes: magic "CLST", format version, point count, dimensions (2), number of label values,
+ *                     flags, then the bounds minX, minY, maxX, maxY as doubles
+ *   x section:        count doubles
+ *   y section:        count doubles
+ *   label section:    count ints, NodeCategories indices or NodeCategories.UNCATEGORIZED
+ *
+ * An opened dataset reads the sections straight from the mapped file: the points can be streamed through
+ * source() without copying them, or bulk-copied into a PointStore with copyTo(). Each section must fit in one
+ * mapping, which limits a file to about 268 million points.
+ */
+public class BinaryDataset implements Closeable {
+	private static final int MAGIC = 'C' | 'L' << 8 | 'S' << 16 | 'T' << 24;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int DIMENSIONS = 2;
+	private static final int FLAG_LABELS = 1;
+	private static final int MAX_SPARSE_LABELS = 1 << 16;	// Label values accepted beyond one per point
+
+	private final FileChannel channel;
+	private final int size, numLabels;
+	private final double minX, minY, maxX, maxY;
+	private final DoubleBuffer x, y;
+	private final IntBuffer labels;
+
+	private BinaryDataset(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException(path + " is not a binary dataset: file too short");
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException(path + " is not a binary dataset: bad magic number");
+			if (header.getInt(4) != VERSION)
+				throw new IOException(path + ": unsupported format version " + header.getInt(4));
+			if (header.getInt(12) != DIMENSIONS)
+				throw new IOException(path + ": unsupported dimensionality " + header.getInt(12));
+			this.size = header.getInt(8);
+			this.numLabels = header.getInt(16);
+			if (size < 0)
+				throw new IOException(path + ": corrupt header, negative point count " + size);
+			if (numLabels < 0 || numLabels > Math.max(size, MAX_SPARSE_LABELS))
+				throw new IOException(path + ": corrupt header, " + numLabels + " label values for " + size + " points");
+			boolean hasLabels = (header.getInt(20) & FLAG_LABELS) != 0;
+			this.minX = header.getDouble(24);
+			this.minY = header.getDouble(32);
+			this.maxX = header.getDouble(40);
+			this.maxY = header.getDouble(48);
+			if (channel.size() < fileSize(size))
+				throw new IOException(path + ": truncated, expected " + fileSize(size) + " bytes");
+			this.x = map(HEADER_SIZE, (long) size * Double.BYTES).asDoubleBuffer();
+			this.y = map(yOffset(size), (long) size * Double.BYTES).asDoubleBuffer();
+			this.labels = hasLabels ? map(labelOffset(size), (long) size * Integer.BYTES).asIntBuffer() : null;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a dataset file and map its sections.
+	 * @param path
+	 * @return dataset
+	 * @throws IOException - if the file cannot be read or is not a binary dataset
+	 */
+	public static BinaryDataset open(Path path) throws IOException {
+		return new BinaryDataset(path);
+	}
+
+	/**
+	 * Read a whole dataset file into a new store.
+	 * @param path
+	 * @return points
+	 * @throws IOException
+	 */
+	public static PointStore read(Path path) throws IOException {
+		try (BinaryDataset dataset = open(path)) {
+			PointStore points = new PointStore(Math.max(1, dataset.size()));
+			dataset.copyTo(points);
+			return points;
+		}
+	}
+
+	/**
+	 * Write the points of a store with their labels.
+	 * @param path
+	 * @param points
+	 * @throws IOException
+	 */
+	public static void write(Path path, PointStore points) throws IOException {
+		int size = points.size();
+		int maxLabel = -1;
+		int[] pointLabels = points.labels();
+		for (int i = 0; i < size; i++)
+			maxLabel = Math.max(maxLabel, pointLabels[i]);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, size).putInt(12, DIMENSIONS).putInt(16, maxLabel + 1)
+					.putInt(20, FLAG_LABELS);
+			header.putDouble(24, points.getMinX()).putDouble(32, points.getMinY()).putDouble(40, points.getMaxX())
+					.putDouble(48, points.getMaxY());
+			if (size > 0) {
+				mapForWrite(channel, HEADER_SIZE, (long) size * Double.BYTES).asDoubleBuffer().put(points.xs(), 0, size);
+				mapForWrite(channel, yOffset(size), (long) size * Double.BYTES).asDoubleBuffer().put(points.ys(), 0, size);
+				mapForWrite(channel, labelOffset(size), (long) size * Integer.BYTES).asIntBuffer().put(pointLabels, 0, size);
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of label values, labels range from NodeCategories.UNCATEGORIZED to getNumLabels() - 1.
+	 * @return number of label values
+	 */
+	public int getNumLabels() {
+		return numLabels;
+	}
+
+	public boolean hasLabels() {
+		return labels != null;
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	public double getX(int index) {
+		return x.get(index);
+	}
+
+	public double getY(int index) {
+		return y.get(index);
+	}
+
+	/**
+	 * Get the label of a point, NodeCategories.UNCATEGORIZED if the file has no labels.
+	 * @param index
+	 * @return label
+	 */
+	public int getLabel(int index) {
+		return labels == null ? NodeCategories.UNCATEGORIZED : labels.get(index);
+	}
+
+	/**
+	 * Get the mapped x section. The buffer reads the file directly.
+	 * @return x-coordinates
+	 */
+	public DoubleBuffer xs() {
+		return x.duplicate();
+	}
+
+	/**
+	 * Get the mapped y section. The buffer reads the file directly.
+	 * @return y-coordinates
+	 */
+	public DoubleBuffer ys() {
+		return y.duplicate();
+	}
+
+	/**
+	 * Append all points to a store with bulk copies of the sections. Every label is first checked against the
+	 * number of label values in the header, so a corrupt label section leaves the store unchanged.
+	 * @param points
+	 * @throws IOException - if a label is outside [UNCATEGORIZED, number of label values)
+	 */
+	public void copyTo(PointStore points) throws IOException {
+		if (labels != null) {
+			for (int i = 0; i < size; i++) {
+				int label = labels.get(i);
+				if (label < NodeCategories.UNCATEGORIZED || label >= numLabels)
+					throw new IOException("Corrupt label section, label " + label + " of point " + i
+							+ " is outside [" + NodeCategories.UNCATEGORIZED + ", " + numLabels + ")");
+			}
+		}
+		int first = points.extend(size);
+		x.duplicate().get(points.xs(), first, size);
+		y.duplicate().get(points.ys(), first, size);
+		if (labels != null)
+			labels.duplicate().get(points.labels(), first, size);
+		else
+			Arrays.fill(points.labels(), first, first + size, NodeCategories.UNCATEGORIZED);
+		if (size > 0)
+			points.includeBounds(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Get a source that streams the points from the mapped sections, restarting at the end.
+	 * @return source
+	 */
+	public PointSource source() {
+		DoubleBuffer sourceX = x.duplicate(), sourceY = y.duplicate();
+		return new PointSource() {
+			@Override
+			public int next(double[] outX, double[] outY, int max) {
+				int count = 0;
+				while (count < max && size > 0) {
+					if (!sourceX.hasRemaining()) {
+						sourceX.rewind();
+						sourceY.rewind();
+					}
+					int length = Math.min(max - count, sourceX.remaining());
+					sourceX.get(outX, count, length);
+					sourceY.get(outY, count, length);
+					count += length;
+				}
+				return count;
+			}
+
+			@Override
+			public void close() {
+				// The mapping belongs to the dataset
+			}
+		};
+	}
+
+	/**
+	 * Close the file. Mapped buffers stay readable until they are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private ByteBuffer map(long offset, long length) throws IOException {
+		checkSection(length);
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static ByteBuffer mapForWrite(FileChannel channel, long offset, long length) throws IOException {
+		checkSection(length);
+		return channel.map(FileChannel.MapMode.READ_WRITE, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void checkSection(long length) throws IOException {
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("Dataset section of " + length + " bytes is too large to map");
+	}
+
+	private static long yOffset(int size) {
+		return HEADER_SIZE + (long) size * Double.BYTES;
+	}
+
+	private static long labelOffset(int size) {
+		return HEADER_SIZE + 2L * size * Double.BYTES;
+	}
+
+	private static long fileSize(int size) {
+		return labelOffset(size) + (long) size * Integer.BYTES;
+	}
+}
@@ -0,0 +1,380 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * CSV and TSV datasets: one point per line, x and y followed by an optional label, separated by commas, tabs or
+ * semicolons. Lines that do not start with two finite numbers, such as a header, are skipped and counted in the log.
+ *
+ * The importer splits the file at line boundaries and parses the splits in parallel, each through a fixed-size
+ * buffer and without creating a String per field. A first pass counts the lines of every split so that the
+ * points are parsed straight into their final place in the PointStore and the file is never held in memory.
+ * Labels that are all integers between NodeCategories.UNCATEGORIZED and MAX_INDEX_LABEL are kept as NodeCategories
+ * indices; otherwise, large or negative integers included, every distinct label value gets an index in order of
+ * first appearance and its name is reported to the caller.
+ */
+public class CsvDataset {
+	private static final Logger LOGGER = Logger.getLogger(CsvDataset.class.getName());
+	private static final long MIN_SPLIT_SIZE = 4 << 20;
+	private static final int FLUSH_SIZE = 1 << 16;
+	private static final int MAX_INDEX_LABEL = (1 << 16) - 1;	// Largest integer label kept as an index
+
+	/**
+	 * Read a dataset into a new store.
+	 * @param path
+	 * @return points
+	 * @throws IOException
+	 */
+	public static PointStore read(Path path) throws IOException {
+		return read(path, null, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Read a dataset into a new store.
+	 * @param path
+	 * @param labelNames - receives the label value of every index if the labels are not integers, may be null
+	 * @param pool - pool parsing the splits
+	 * @return points
+	 * @throws IOException
+	 */
+	public static PointStore read(Path path, List<String> labelNames, ForkJoinPool pool) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int numSplits = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, size / MIN_SPLIT_SIZE));
+			long[] splitStart = new long[numSplits + 1];
+			for (int s = 1; s < numSplits; s++)
+				splitStart[s] = CsvLineReader.nextLineStart(channel, size * s / numSplits);
+			splitStart[numSplits] = size;
+
+			// First pass: count the lines of every split to place its points
+			int[] lineCount = new int[numSplits];
+			run(pool, numSplits, (s) -> lineCount[s] = countLines(channel, splitStart[s], splitStart[s + 1]));
+			long totalLines = 0;
+			for (int count : lineCount)
+				totalLines += count;
+			if (totalLines > Integer.MAX_VALUE - 8)
+				throw new IOException(path + ": too many lines (" + totalLines + ")");
+			PointStore points = new PointStore((int) Math.max(1, totalLines));
+			int first = points.extend((int) totalLines);
+			int[] splitOffset = new int[numSplits];
+			for (int s = 1; s < numSplits; s++)
+				splitOffset[s] = splitOffset[s - 1] + lineCount[s - 1];
+
+			// Second pass: parse every split into its range, labels as split-local dictionary ids
+			Split[] splits = new Split[numSplits];
+			run(pool, numSplits, (s) -> {
+				splits[s] = new Split(first + splitOffset[s]);
+				splits[s].parse(channel, splitStart[s], splitStart[s + 1], points);
+			});
+
+			// Map the split-local labels to global indices
+			boolean numeric = true;
+			for (Split split : splits)
+				numeric &= split.labels.allIndices();
+			LabelTable global = new LabelTable();
+			int[][] mapping = new int[numSplits][];
+			for (int s = 0; s < numSplits; s++) {
+				LabelTable local = splits[s].labels;
+				mapping[s] = new int[local.size];
+				for (int id = 0; id < local.size; id++)
+					mapping[s][id] = numeric ? (int) local.value[id] : global.add(local.key[id], 0, local.key[id].length);
+			}
+			if (!numeric && labelNames != null) {
+				for (int id = 0; id < global.size; id++)
+					labelNames.add(new String(global.key[id], StandardCharsets.UTF_8));
+			}
+			int[] labels = points.labels();
+			run(pool, numSplits, (s) -> {
+				for (int i = splits[s].first; i < splits[s].first + splits[s].count; i++)
+					labels[i] = labels[i] < 0 ? NodeCategories.UNCATEGORIZED : mapping[s][labels[i]];
+			});
+
+			// Close the gaps left by skipped lines and set the bounds
+			int next = first;
+			for (Split split : splits) {
+				if (split.first != next) {
+					System.arraycopy(points.xs(), split.first, points.xs(), next, split.count);
+					System.arraycopy(points.ys(), split.first, points.ys(), next, split.count);
+					System.arraycopy(labels, split.first, labels, next, split.count);
+				}
+				next += split.count;
+				if (split.count > 0)
+					points.includeBounds(split.minX, split.minY, split.maxX, split.maxY);
+			}
+			points.truncate(next);
+			long skipped = 0;
+			for (Split split : splits)
+				skipped += split.skipped;
+			if (skipped > 0) {
+				long skippedLines = skipped;
+				LOGGER.info(() -> "Skipped " + skippedLines + " lines of " + path + " without two finite coordinates");
+			}
+			return points;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Write the points with the given labels as "x,y,label" lines.
+	 * @param path
+	 * @param points
+	 * @param labels - label of every point
+	 * @param labelNames - name of every label index, or null to write the indices
+	 * @throws IOException
+	 */
+	public static void writeLabels(Path path, PointStore points, int[] labels, List<String> labelNames) throws IOException {
+		try (Writer writer = new Writer(path, "x", "y", "label")) {
+			writer.writePoints(points.xs(), points.ys(), labels, points.size(), labelNames);
+		}
+	}
+
+	/**
+	 * Write cluster centers as "label,x,y" lines.
+	 * @param path
+	 * @param centerX
+	 * @param centerY
+	 * @throws IOException
+	 */
+	public static void writeCenters(Path path, double[] centerX, double[] centerY) throws IOException {
+		try (Writer writer = new Writer(path, "label", "x", "y")) {
+			for (int c = 0; c < centerX.length; c++)
+				writer.writeRow(c, centerX[c], centerY[c]);
+		}
+	}
+
+	private static int countLines(FileChannel channel, long start, long end) {
+		try {
+			return CsvLineReader.countLines(channel, start, end);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Run body for every split on the pool and wait for all of them.
+	 */
+	private static void run(ForkJoinPool pool, int numSplits, IntConsumer body) {
+		pool.invoke(new SplitTask(body, 0, numSplits));
+	}
+
+	private static class SplitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntConsumer body;
+		private final int from, to;
+
+		SplitTask(IntConsumer body, int from, int to) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SplitTask(body, from, middle), new SplitTask(body, middle, to));
+			} else if (to > from) {
+				body.accept(from);
+			}
+		}
+	}
+
+	/**
+	 * Points parsed from one split of the file, written from index first on.
+	 */
+	private static class Split {
+		final int first;
+		int count = 0;
+		int skipped = 0;	// Lines that are not blank and not a point
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		final LabelTable labels = new LabelTable();
+
+		Split(int first) {
+			this.first = first;
+		}
+
+		void parse(FileChannel channel, long start, long end, PointStore points) {
+			double[] x = points.xs(), y = points.ys();
+			int[] pointLabels = points.labels();
+			try {
+				CsvLineReader reader = new CsvLineReader(channel, start, end);
+				byte[] buffer = reader.buffer();
+				while (reader.nextLine()) {
+					if (reader.fieldCount < 2) {
+						if (!reader.isBlank())
+							skipped++;
+						continue;
+					}
+					double px = CsvLineReader.parseDouble(buffer, reader.fieldStart[0], reader.fieldEnd[0]);
+					double py = CsvLineReader.parseDouble(buffer, reader.fieldStart[1], reader.fieldEnd[1]);
+					if (!Double.isFinite(px) || !Double.isFinite(py)) {
+						skipped++;	// Header, malformed line, infinite or overflowing coordinate
+						continue;
+					}
+					int label = -1;		// Uncategorized until mapped
+					if (reader.fieldCount > 2 && reader.fieldEnd[2] > reader.fieldStart[2])
+						label = labels.add(buffer, reader.fieldStart[2], reader.fieldEnd[2]);
+					int index = first + count++;
+					x[index] = px;
+					y[index] = py;
+					pointLabels[index] = label;
+					minX = Math.min(minX, px);
+					maxX = Math.max(maxX, px);
+					minY = Math.min(minY, py);
+					maxY = Math.max(maxY, py);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Open-addressing table of distinct label values, looked up by byte range so that a key is only copied the
+	 * first time it is seen. Ids are given in order of first appearance.
+	 */
+	private static class LabelTable {
+		byte[][] key = new byte[16][];
+		long[] value = new long[16];	// Integer value of every key, Long.MIN_VALUE if it is not an integer
+		int size = 0;
+		private int[] slots = new int[64];	// id + 1, 0 for an empty slot
+
+		int add(byte[] bytes, int from, int to) {
+			int hash = 1;
+			for (int i = from; i < to; i++)
+				hash = 31 * hash + bytes[i];
+			int mask = slots.length - 1;
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				int id = slots[slot] - 1;
+				if (id < 0) {
+					id = size++;
+					if (id == key.length) {
+						key = Arrays.copyOf(key, id * 2);
+						value = Arrays.copyOf(value, id * 2);
+					}
+					key[id] = Arrays.copyOfRange(bytes, from, to);
+					value[id] = CsvLineReader.parseInt(bytes, from, to);
+					slots[slot] = id + 1;
+					if (size * 2 > slots.length)
+						rehash();
+					return id;
+				}
+				if (Arrays.equals(key[id], 0, key[id].length, bytes, from, to))
+					return id;
+			}
+		}
+
+		/**
+		 * Check that every key is an integer usable as a NodeCategories index, so that indices stay dense.
+		 */
+		boolean allIndices() {
+			for (int id = 0; id < size; id++) {
+				if (value[id] < NodeCategories.UNCATEGORIZED || value[id] > MAX_INDEX_LABEL)
+					return false;
+			}
+			return true;
+		}
+
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			int mask = slots.length - 1;
+			for (int id = 0; id < size; id++) {
+				int hash = 1;
+				for (byte b : key[id])
+					hash = 31 * hash + b;
+				int slot = hash & mask;
+				while (slots[slot] != 0)
+					slot = (slot + 1) & mask;
+				slots[slot] = id + 1;
+			}
+		}
+	}
+
+	/**
+	 * Streaming writer of delimited rows. Rows are formatted into a buffer that is written out every 64 KB, using
+	 * tabs if the file name ends with ".tsv" and commas otherwise.
+	 */
+	public static class Writer implements Closeable {
+		private final OutputStream out;
+		private final char delimiter;
+		private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 256);
+
+		/**
+		 * @param path
+		 * @param header - column names of the first line
+		 * @throws IOException
+		 */
+		public Writer(Path path, String... header) throws IOException {
+			this.out = Files.newOutputStream(path);
+			this.delimiter = path.getFileName().toString().endsWith(".tsv") ? '\t' : ',';
+			for (int i = 0; i < header.length; i++)
+				buffer.append(i == 0 ? "" : String.valueOf(delimiter)).append(header[i]);
+			buffer.append('\n');
+		}
+
+		/**
+		 * Write "x,y,label" rows.
+		 * @param x
+		 * @param y
+		 * @param labels
+		 * @param count
+		 * @param labelNames - name of every label index, or null to write the indices
+		 * @throws IOException
+		 */
+		public void writePoints(double[] x, double[] y, int[] labels, int count, List<String> labelNames) throws IOException {
+			for (int i = 0; i < count; i++) {
+				buffer.append(x[i]).append(delimiter).append(y[i]).append(delimiter);
+				if (labelNames == null)
+					buffer.append(labels[i]);
+				else if (labels[i] >= 0)
+					buffer.append(labelNames.get(labels[i]));
+				buffer.append('\n');
+				if (buffer.length() >= FLUSH_SIZE)
+					flush();
+			}
+		}
+
+		/**
+		 * Write a "label,x,y" row.
+		 * @param label
+		 * @param x
+		 * @param y
+		 * @throws IOException
+		 */
+		public void writeRow(int label, double x, double y) throws IOException {
+			buffer.append(label).append(delimiter).append(x).append(delimiter).append(y).append('\n');
+			if (buffer.length() >= FLUSH_SIZE)
+				flush();
+		}
+
+		private void flush() throws IOException {
+			out.write(buffer.toString().getBytes(StandardCharsets.UTF_8));
+			buffer.setLength(0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lines of a byte range of a file through one fixed-size buffer. A line is exposed as a range of the
+ * buffer, so no String is created; a line cut by the end of the buffer is moved to its start before the next read.
+ * Fields are separated by commas, tabs or semicolons and trimmed of spaces and double quotes.
+ */
+class CsvLineReader {
+	static final int CHUNK_SIZE = 1 << 20;
+	static final int MAX_FIELDS = 3;	// x, y and label, later fields are ignored
+
+	private final FileChannel channel;
+	private final long end;
+	private long position;
+	private final byte[] buffer;
+	private final ByteBuffer byteBuffer;
+	private int bufferStart = 0, bufferEnd = 0;
+	private boolean endOfRange = false;
+	// Current line and its fields
+	private int lineStart, lineEnd;
+	final int[] fieldStart = new int[MAX_FIELDS], fieldEnd = new int[MAX_FIELDS];
+	int fieldCount;
+
+	/**
+	 * @param channel
+	 * @param start - offset of the first line
+	 * @param end - offset after the last line
+	 */
+	CsvLineReader(FileChannel channel, long start, long end) {
+		this.channel = channel;
+		this.position = start;
+		this.end = end;
+		this.buffer = new byte[CHUNK_SIZE];
+		this.byteBuffer = ByteBuffer.wrap(buffer);
+	}
+
+	byte[] buffer() {
+		return buffer;
+	}
+
+	/**
+	 * Move to the next line and split it into fields.
+	 * @return false - at the end of the range
+	 * @throws IOException - if reading fails or a line does not fit in the buffer
+	 */
+	boolean nextLine() throws IOException {
+		while (true) {
+			for (int i = bufferStart; i < bufferEnd; i++) {
+				if (buffer[i] == '\n') {
+					setLine(bufferStart, i);
+					bufferStart = i + 1;
+					return true;
+				}
+			}
+			if (endOfRange) {
+				if (bufferStart == bufferEnd)
+					return false;
+				setLine(bufferStart, bufferEnd);	// Last line without a line break
+				bufferStart = bufferEnd;
+				return true;
+			}
+			fill();
+		}
+	}
+
+	private void fill() throws IOException {
+		// Keep the unfinished line
+		int remaining = bufferEnd - bufferStart;
+		if (remaining == buffer.length)
+			throw new IOException("Line longer than " + buffer.length + " bytes at offset " + (position - remaining));
+		System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+		bufferStart = 0;
+		bufferEnd = remaining;
+		byteBuffer.clear().position(remaining).limit((int) Math.min(buffer.length, remaining + end - position));
+		while (byteBuffer.hasRemaining()) {
+			int read = channel.read(byteBuffer, position);
+			if (read < 0)
+				break;
+			position += read;
+		}
+		bufferEnd = byteBuffer.position();
+		if (position >= end || bufferEnd == remaining)
+			endOfRange = true;
+	}
+
+	private void setLine(int from, int to) {
+		if (to > from && buffer[to - 1] == '\r')
+			to--;
+		lineStart = from;
+		lineEnd = to;
+		fieldCount = 0;
+		int start = from;
+		for (int i = from; i <= to && fieldCount < MAX_FIELDS; i++) {
+			if (i == to || buffer[i] == ',' || buffer[i] == '\t' || buffer[i] == ';') {
+				addField(start, i);
+				start = i + 1;
+			}
+		}
+	}
+
+	private void addField(int from, int to) {
+		while (from < to && (buffer[from] == ' ' || buffer[from] == '"'))
+			from++;
+		while (to > from && (buffer[to - 1] == ' ' || buffer[to - 1] == '"'))
+			to--;
+		fieldStart[fieldCount] = from;
+		fieldEnd[fieldCount] = to;
+		fieldCount++;
+	}
+
+	boolean isBlank() {
+		return lineEnd == lineStart;
+	}
+
+	/**
+	 * Count the lines of a byte range, a last line without a line break included.
+	 * @param channel
+	 * @param start
+	 * @param end
+	 * @return number of lines
+	 * @throws IOException
+	 */
+	static int countLines(FileChannel channel, long start, long end) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+		byte[] bytes = chunk.array();
+		long count = 0;
+		byte last = '\n';
+		for (long position = start; position < end;) {
+			chunk.clear().limit((int) Math.min(CHUNK_SIZE, end - position));
+			int read = channel.read(chunk, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (bytes[i] == '\n')
+					count++;
+			}
+			last = bytes[read - 1];
+			position += read;
+		}
+		if (last != '\n')
+			count++;
+		return (int) Math.min(Integer.MAX_VALUE, count);
+	}
+
+	/**
+	 * Find the offset just after the first line break at or after the given offset.
+	 * @param channel
+	 * @param offset
+	 * @return offset of the next line start, or the file size
+	 * @throws IOException
+	 */
+	static long nextLineStart(FileChannel channel, long offset) throws IOException {
+		ByteBuffer probe = ByteBuffer.allocate(1 << 12);
+		long size = channel.size();
+		while (offset < size) {
+			probe.clear();
+			int read = channel.read(probe, offset);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n')
+					return offset + i + 1;
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	/**
+	 * Parse a decimal number from a range of bytes without allocating. Up to 18 significant digits and small
+	 * exponents are handled directly: exactly when the digits form an integer below 2^53, otherwise by correcting
+	 * the rounded quotient or product with its exact residual, falling back to Double.parseDouble in the rare
+	 * cases too close to a rounding boundary to decide, and for anything else.
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @return value, or NaN if the range is not a number
+	 */
+	static double parseDouble(byte[] bytes, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+			negative = bytes[i++] == '-';
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean anyDigit = false;
+		for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+			anyDigit = true;
+			if (mantissa != 0 || bytes[i] != '0')
+				digits++;
+			if (digits <= 18)
+				mantissa = mantissa * 10 + (bytes[i] - '0');
+			else
+				exponent++;
+		}
+		if (i < to && bytes[i] == '.') {
+			for (i++; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+				anyDigit = true;
+				if (mantissa != 0 || bytes[i] != '0')
+					digits++;
+				if (digits <= 18) {
+					mantissa = mantissa * 10 + (bytes[i] - '0');
+					exponent--;
+				}
+			}
+		}
+		if (i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			int sign = 1, value = 0;
+			i++;
+			if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+				sign = bytes[i++] == '-' ? -1 : 1;
+			boolean anyExponentDigit = false;
+			for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+				anyExponentDigit = true;
+				value = Math.min(100_000, value * 10 + (bytes[i] - '0'));
+			}
+			if (!anyExponentDigit)
+				return Double.NaN;
+			exponent += sign * value;
+		}
+		if (!anyDigit || i != to)
+			return slowParseDouble(bytes, from, to);
+		if (digits > 18 || Math.abs(exponent) >= POWERS_OF_TEN.length)
+			return slowParseDouble(bytes, from, to);
+		double value;
+		if (mantissa <= 1L << 53) {
+			// Both operands are exact, so one rounding gives the correctly rounded result
+			value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		} else {
+			value = scale(mantissa, exponent);
+			if (Double.isNaN(value))
+				return slowParseDouble(bytes, from, to);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Correctly rounded mantissa * 10^exponent for a mantissa above 2^53, or NaN when the exact value lies too
+	 * close to the middle of two doubles to decide cheaply.
+	 */
+	private static double scale(long mantissa, int exponent) {
+		double high = (double) mantissa;
+		double low = (double) (mantissa - (long) high);	// Exact, |low| <= 2^10
+		double power = POWERS_OF_TEN[Math.abs(exponent)];
+		double rounded, residual;	// The exact value is rounded + residual
+		if (exponent < 0) {
+			rounded = high / power;
+			// high - rounded * power is exactly representable, computed with an exact product
+			residual = ((high - rounded * power) - productError(rounded, power) + low) / power;
+		} else {
+			rounded = high * power;
+			residual = productError(high, power) + low * power;
+		}
+		double ulp = Math.ulp(rounded);
+		double fraction = Math.abs(residual) / ulp;
+		// Undecidable near a halfway point, or at a power of two where the ulp below is smaller
+		if (Math.abs(fraction - 0.5) < 1e-6 || Math.abs(fraction - 1.5) < 1e-6 || rounded == Math.scalb(1.0, Math.getExponent(rounded)))
+			return Double.NaN;
+		return rounded + residual;
+	}
+
+	/**
+	 * Rounding error of a * b, so that the exact product is (a * b) + productError(a, b) (Dekker's two-product).
+	 */
+	private static double productError(double a, double b) {
+		double p = a * b;
+		double aHigh = split(a), aLow = a - aHigh;
+		double bHigh = split(b), bLow = b - bHigh;
+		return ((aHigh * bHigh - p) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+	}
+
+	/**
+	 * High half of a double (Veltkamp split), its 26 leading bits.
+	 */
+	private static double split(double a) {
+		double c = 134217729.0 * a;	// 2^27 + 1
+		return c - (c - a);
+	}
+
+	private static double slowParseDouble(byte[] bytes, int from, int to) {
+		try {
+			return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Parse an integer from a range of bytes.
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @return value, or Long.MIN_VALUE if the range is not an integer that fits in an int
+	 */
+	static long parseInt(byte[] bytes, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+			negative = bytes[i++] == '-';
+		if (i == to)
+			return Long.MIN_VALUE;
+		long value = 0;
+		for (; i < to; i++) {
+			if (bytes[i] < '0' || bytes[i] > '9' || value > Integer.MAX_VALUE)
+				return Long.MIN_VALUE;
+			value = value * 10 + (bytes[i] - '0');
+		}
+		value = negative ? -value : value;
+		return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+	}
+}
@@ -0,0 +1,254 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Seeded synthetic datasets over a width x height area.
+ *
+ * The points are produced in fixed-size blocks, each with its own SplittableRandom stream split from the seed in
+ * block order, so the blocks can be generated in parallel and the same seed always gives the same points, whatever
+ * the number of threads and whether they go to a PointStore or a file. Every point is labelled with its cluster;
+ * points that would fall outside the area are mirrored back inside instead of being drawn again.
+ */
+public class DatasetGenerator {
+	/**
+	 * Shape of the generated points.
+	 */
+	public enum Distribution {
+		BLOBS,			// Isotropic Gaussian clusters
+		ANISOTROPIC,	// Gaussian clusters stretched and rotated by a random angle
+		UNIFORM			// Uniform noise over the area, labelled with the nearest cluster center
+	}
+
+	private static final int BLOCK_SIZE = 1 << 16;	// Points per random stream
+
+	private final long seed;
+	private final double width, height;
+	private Distribution distribution = Distribution.BLOBS;
+	private int numClusters;
+	private double spread;
+	private double noiseFraction = 0;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * @param seed
+	 * @param width - width of the area, x ranges over [0, width]
+	 * @param height - height of the area, y ranges over [0, height]
+	 */
+	public DatasetGenerator(long seed, double width, double height) {
+		this.seed = seed;
+		this.width = width;
+		this.height = height;
+		this.numClusters = 3 + new SplittableRandom(seed).nextInt(3);	// 3 to 5 clusters unless set
+		this.spread = Math.min(width, height) / 12;
+	}
+
+	public void setDistribution(Distribution distribution) {
+		this.distribution = distribution;
+	}
+
+	public int getNumClusters() {
+		return numClusters;
+	}
+
+	/**
+	 * Set the number of clusters, between 3 and 5 chosen from the seed by default.
+	 * @param numClusters
+	 */
+	public void setNumClusters(int numClusters) {
+		this.numClusters = numClusters;
+	}
+
+	/**
+	 * Set the standard deviation of the clusters, a twelfth of the smaller side by default.
+	 * @param spread
+	 */
+	public void setSpread(double spread) {
+		this.spread = spread;
+	}
+
+	/**
+	 * Set the fraction of the points drawn as uniform noise over the area, 0 by default.
+	 * @param noiseFraction
+	 */
+	public void setNoiseFraction(double noiseFraction) {
+		this.noiseFraction = noiseFraction;
+	}
+
+	/**
+	 * Set the pool that generates the blocks. The common pool is used by default.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Append count generated points to the store, generating the blocks in parallel.
+	 * @param points
+	 * @param count
+	 */
+	public void generate(PointStore points, int count) {
+		Clusters clusters = new Clusters();
+		SplittableRandom[] streams = streams(count);
+		int first = points.extend(count);
+		double[] x = points.xs(), y = points.ys();
+		int[] labels = points.labels();
+		pool.invoke(new BlockTask(clusters, streams, count, x, y, labels, first, 0, streams.length));
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = first; i < first + count; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		points.includeBounds(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Write count generated points to a text file as "x,y,label" lines, one block at a time. The points are the
+	 * same as those generate() would append to an empty store.
+	 * @param path
+	 * @param count
+	 * @throws IOException
+	 */
+	public void write(Path path, int count) throws IOException {
+		Clusters clusters = new Clusters();
+		SplittableRandom[] streams = streams(count);
+		double[] x = new double[BLOCK_SIZE], y = new double[BLOCK_SIZE];
+		int[] labels = new int[BLOCK_SIZE];
+		try (CsvDataset.Writer writer = new CsvDataset.Writer(path, "x", "y", "label")) {
+			for (int block = 0; block < streams.length; block++) {
+				int blockSize = Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE);
+				generateBlock(clusters, streams[block], x, y, labels, 0, blockSize);
+				writer.writePoints(x, y, labels, blockSize, null);
+			}
+		}
+	}
+
+	/**
+	 * One random stream per block, split from the seed in block order. The first split draws the clusters.
+	 */
+	private SplittableRandom[] streams(int count) {
+		SplittableRandom random = new SplittableRandom(seed);
+		random.split();	// Reserved for the clusters
+		SplittableRandom[] streams = new SplittableRandom[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		for (int block = 0; block < streams.length; block++)
+			streams[block] = random.split();
+		return streams;
+	}
+
+	private void generateBlock(Clusters clusters, SplittableRandom random, double[] x, double[] y, int[] labels, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (distribution == Distribution.UNIFORM || random.nextDouble() < noiseFraction) {
+				x[i] = random.nextDouble() * width;
+				y[i] = random.nextDouble() * height;
+				labels[i] = clusters.nearest(x[i], y[i]);
+				continue;
+			}
+			int c = random.nextInt(numClusters);
+			// Offsets along the cluster axes, rotated into place
+			double u = gaussian(random) * clusters.majorSpread[c], v = gaussian(random) * clusters.minorSpread[c];
+			x[i] = mirror(clusters.x[c] + u * clusters.cos[c] - v * clusters.sin[c], width);
+			y[i] = mirror(clusters.y[c] + u * clusters.sin[c] + v * clusters.cos[c], height);
+			labels[i] = c;
+		}
+	}
+
+	/**
+	 * Reflect a coordinate at the edges of [0, max] and clamp what is still outside.
+	 */
+	private static double mirror(double value, double max) {
+		if (value < 0)
+			value = -value;
+		if (value > max)
+			value = 2 * max - value;
+		return Math.max(0, Math.min(max, value));
+	}
+
+	private static double gaussian(SplittableRandom random) {
+		// Box-Muller transform
+		return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+
+	/**
+	 * Cluster centers and shapes drawn from the first stream split from the seed.
+	 */
+	private class Clusters {
+		final double[] x = new double[numClusters], y = new double[numClusters];
+		final double[] majorSpread = new double[numClusters], minorSpread = new double[numClusters];
+		final double[] cos = new double[numClusters], sin = new double[numClusters];
+
+		Clusters() {
+			SplittableRandom random = new SplittableRandom(seed).split();
+			for (int c = 0; c < numClusters; c++) {
+				// Keep the centers away from the edges
+				x[c] = width * (0.1 + 0.8 * random.nextDouble());
+				y[c] = height * (0.1 + 0.8 * random.nextDouble());
+				double angle = 0, ratio = 1;
+				if (distribution == Distribution.ANISOTROPIC) {
+					angle = random.nextDouble() * Math.PI;
+					ratio = 2 + 2 * random.nextDouble();	// Major axis 2 to 4 times the minor axis
+				}
+				majorSpread[c] = spread * Math.sqrt(ratio);
+				minorSpread[c] = spread / Math.sqrt(ratio);
+				cos[c] = Math.cos(angle);
+				sin[c] = Math.sin(angle);
+			}
+		}
+
+		int nearest(double px, double py) {
+			int nearest = 0;
+			double nearestDist = Double.MAX_VALUE;
+			for (int c = 0; c < numClusters; c++) {
+				double dx = px - x[c], dy = py - y[c], dist = dx * dx + dy * dy;
+				if (dist < nearestDist) {
+					nearest = c;
+					nearestDist = dist;
+				}
+			}
+			return nearest;
+		}
+	}
+
+	/**
+	 * Generates the blocks [from, to) into the columns starting at index first.
+	 */
+	private class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Clusters clusters;
+		private final SplittableRandom[] streams;
+		private final int count, first, from, to;
+		private final double[] x, y;
+		private final int[] labels;
+
+		BlockTask(Clusters clusters, SplittableRandom[] streams, int count, double[] x, double[] y, int[] labels, int first, int from, int to) {
+			this.clusters = clusters;
+			this.streams = streams;
+			this.count = count;
+			this.x = x;
+			this.y = y;
+			this.labels = labels;
+			this.first = first;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BlockTask(clusters, streams, count, x, y, labels, first, from, middle),
+						new BlockTask(clusters, streams, count, x, y, labels, first, middle, to));
+			} else if (to > from) {
+				int start = from * BLOCK_SIZE;
+				generateBlock(clusters, streams[from], x, y, labels, first + start, first + Math.min(count, start + BLOCK_SIZE));
+			}
+		}
+	}
+}
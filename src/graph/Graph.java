@@ -1,13 +1,16 @@
 package graph;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Random;
 
-import javafx.scene.paint.Color;
-
 public class Graph {
-	private ArrayList<Node> categorizedNodes;
+	private PointStore points;
+	private KDTree neighbourIndex;	// Built on first use, kept up to date by add()
+	private GridIndex gridIndex;	// Built on first use for a radius, valid for gridIndexVersion
+	private long gridIndexVersion;
 	private Node uncategorizedNode;
+	private long version = 0;		// Incremented whenever the categorized nodes change
 	int numClusters = 0;
 
 	public int getNumClusters() {
@@ -16,27 +19,49 @@ public class Graph {
 
 	// Constructor
 	public Graph() {
-		this.categorizedNodes  = new ArrayList<>();
+		this.points = new PointStore();
 	}
 	
 	/**
-	 * Get a list of all nodes in the graph.
-	 * @return nodes
+	 * Get the columnar store of all categorized nodes in the graph.
+	 * @return points
 	 */
-	public ArrayList<Node> getNodes() {
-		ArrayList<Node> nodes = new ArrayList<>();
-		nodes.addAll(this.categorizedNodes);
-		if (uncategorizedNode != null)
-			nodes.add(uncategorizedNode);
-		return nodes;
+	public PointStore getPoints() {
+		return this.points;
 	}
 	
 	/**
-	 * Get a list of all categorized nodes in the graph.
-	 * @return nodes
+	 * Get the nearest-neighbour index over the categorized nodes. It is built on the first call and then
+	 * updated incrementally as nodes are added.
+	 * @return neighbourIndex
+	 */
+	public KDTree getNeighbourIndex() {
+		if (this.neighbourIndex == null)
+			this.neighbourIndex = new KDTree(this.points);
+		return this.neighbourIndex;
+	}
+	
+	/**
+	 * Get the grid index over the categorized nodes for neighbourhood queries of the given radius.
+	 * The index is cached until the graph changes or another radius is requested.
+	 * @param radius
+	 * @return gridIndex
+	 */
+	public GridIndex getGridIndex(double radius) {
+		if (this.gridIndex == null || this.gridIndexVersion != this.version || this.gridIndex.getRadius() != radius) {
+			this.gridIndex = new GridIndex(this.points, radius);
+			this.gridIndexVersion = this.version;
+		}
+		return this.gridIndex;
+	}
+	
+	/**
+	 * Get the version of the categorized nodes. It changes every time a node is added or the graph is
+	 * cleared or regenerated.
+	 * @return version
 	 */
-	public ArrayList<Node> getCategorizedNodes() {
-		return this.categorizedNodes;
+	public long getVersion() {
+		return this.version;
 	}
 	
 	/**
@@ -63,11 +88,16 @@ public class Graph {
 	 * @return true - if a new node is added.
 	 */
 	public boolean add(Node node) {
-		if (node.getCategory() == Color.BLACK) {
+		int label = node.getLabel();
+		if (label == NodeCategories.UNCATEGORIZED) {
 			this.uncategorizedNode = node;
 			return true;
 		}
-		return this.categorizedNodes.add(node);
+		int index = this.points.add(node.getX(), node.getY(), label);
+		this.version++;
+		if (this.neighbourIndex != null)
+			this.neighbourIndex.insert(index);
+		return true;
 	}
 	
 	/**
@@ -75,68 +105,84 @@ public class Graph {
 	 * @return true
 	 */
 	public boolean clear() {
-		this.categorizedNodes.clear();
+		this.points.clear();
+		this.neighbourIndex = null;
 		this.uncategorizedNode = null;
+		this.version++;
+		return true;
+	}
+
+	/**
+	 * Replace the categorized nodes with those of a dataset file: a binary dataset if the file name ends with
+	 * ".bin", whose sections are memory-mapped and bulk-copied into the point store, or a CSV or TSV file
+	 * imported in parallel otherwise.
+	 * @param path
+	 * @return true
+	 * @throws IOException
+	 */
+	public boolean load(Path path) throws IOException {
+		this.points.clear();
+		this.neighbourIndex = null;
+		this.version++;
+		if (path.getFileName().toString().endsWith(".bin")) {
+			try (BinaryDataset dataset = BinaryDataset.open(path)) {
+				dataset.copyTo(this.points);
+				this.numClusters = dataset.getNumLabels();
+			}
+		} else {
+			this.points = CsvDataset.read(path);
+			int maxLabel = -1;
+			for (int i = 0; i < this.points.size(); i++)
+				maxLabel = Math.max(maxLabel, this.points.getLabel(i));
+			this.numClusters = maxLabel + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Save the categorized nodes to a binary dataset file if the file name ends with ".bin", a CSV or TSV file
+	 * otherwise.
+	 * @param path
+	 * @return true
+	 * @throws IOException
+	 */
+	public boolean save(Path path) throws IOException {
+		if (path.getFileName().toString().endsWith(".bin"))
+			BinaryDataset.write(path, this.points);
+		else
+			CsvDataset.writeLabels(path, this.points, this.points.labels(), null);
 		return true;
 	}
 
 	/**
-	 * Generate a random graph with a random number of clusters and the number of nodes specified by the user.
-	 * The name of each node is its id in generation order.
+	 * Generate a random graph with the number of nodes specified by the user, from a random seed.
+	 * @param numNodes - number of nodes to generate
+	 * @param maxX - max X-value of canvas
+	 * @param maxY - max Y-value of canvas
+	 * @return true
+	 */
+	public boolean generate(int numNodes, int maxX, int maxY) {
+		return generate(numNodes, maxX, maxY, new Random().nextLong());
+	}
+
+	/**
+	 * Generate a random graph of Gaussian clusters. The same seed always gives the same graph.
 	 * 
-	 * The number of clusters is first randomly generated. At each remaining node, a random cluster center is
-	 * selected and used as reference for the node position. An offset value for each axis is randomly generated
-	 * and added to the cluster center to calculate the position of the new node.
+	 * The number of clusters, between 3 and 5, and the cluster centers are drawn from the seed. Every node is
+	 * then placed around a randomly chosen center and labelled with it; see DatasetGenerator.
 	 * 
 	 * @param numNodes - number of nodes to generate
 	 * @param maxX - max X-value of canvas
 	 * @param maxY - max Y-value of canvas
+	 * @param seed
 	 * @return true
 	 */
-	public boolean generate(int numNodes, int maxX, int maxY) {
-		// Initiate generator
-		Random rand = new Random();
-		// Generate number of clusters
-		while (numClusters < 3)
-			numClusters = rand.nextInt(NodeCategories.getSize());
-		// Generate cluster centers
-		ArrayList<Node> centers = new ArrayList<>();
-		for (int i = 0; i < numClusters; i++) {
-			double x = rand.nextDouble() * maxX;	// Generate x-coordinate
-			double y = rand.nextDouble() * maxY;	// Generate y-coordinate
-			Node node = new Node(x, y, NodeCategories.getColor(i));	// Create center node
-			centers.add(node);	// Add center node to list of centers
-			add(node);			// Add center node to list of nodes
-		}
-		// Generate the rest of the nodes
-		int nodeCounter = 0;
-		while (nodeCounter < numNodes - numClusters) {
-			Node center = centers.get(rand.nextInt(numClusters));	// Randomly choose a center
-			// Generate offsets
-			double offsetX, offsetY;
-			if (numNodes >= 500) {
-				offsetX = rand.nextDouble() * rand.nextInt(numNodes / numClusters);	// Generate offset in the x-direction
-				offsetY = rand.nextDouble() * rand.nextInt(numNodes / numClusters);	// Generate offset in the y-direction
-			} else {
-				offsetX = rand.nextInt(numNodes / numClusters);	// Generate offset in the x-direction
-				offsetY = rand.nextInt(numNodes / numClusters);	// Generate offset in the y-direction
-			}
-			// If a random floating point number is less than 0.5 then negate the offset
-			if (rand.nextDouble() < 0.5)
-				offsetX *= -1;
-			if (rand.nextDouble() < 0.5)
-				offsetY *= -1;
-			// Calculate new node position
-			double x = center.getX() + offsetX;
-			double y = center.getY() + offsetY;
-			// If the offset is out of the screen then re-generate the node
-			if (x < 0 || y < 0 || x > maxX || y > maxY)
-				continue;
-			// else, add the new node to graph
-			add(new Node(x, y, center.getCategory()));
-			// Increment number of nodes generated
-			nodeCounter++;
-		}
+	public boolean generate(int numNodes, int maxX, int maxY, long seed) {
+		DatasetGenerator generator = new DatasetGenerator(seed, maxX, maxY);
+		this.numClusters = generator.getNumClusters();
+		this.neighbourIndex = null;	// Generated nodes bypass add(), the index is rebuilt on next use
+		this.version++;
+		generator.generate(this.points, numNodes);
 		return true;
 	}
 }
@@ -0,0 +1,157 @@
+package graph;
+
+/**
+ * Uniform grid over the points of a PointStore, used for fixed-radius neighbourhood queries.
+ *
+ * The cell size is at least the query radius, so every point within the radius of a location lies in the 3x3
+ * block of cells around it. Points are bucketed with a counting sort and their coordinates are copied in cell
+ * order, so the points of a cell are contiguous in cellX/cellY.
+ */
+public class GridIndex {
+	private static final int MAX_CELLS_PER_POINT = 4;
+
+	private final double radius, cellSize;
+	private final double originX, originY;
+	private final int columns, rows;
+	private final int[] cellStart;		// Points of cell c are at [cellStart[c], cellStart[c + 1])
+	private final int[] pointIndex;		// Store index of each bucketed point
+	private final double[] cellX, cellY;	// Coordinates of each bucketed point
+
+	/**
+	 * Bucket all points currently in the store.
+	 * @param points
+	 * @param radius - radius of the neighbourhood queries
+	 */
+	public GridIndex(PointStore points, double radius) {
+		int size = points.size();
+		double[] x = points.xs(), y = points.ys();
+		// Bounds of the points
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		if (size == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		// Cells of the query radius, widened if the grid would be much larger than the data
+		double size2D = Math.max(maxX - minX, maxY - minY);
+		double maxCells = Math.max(1024.0, (double) size * MAX_CELLS_PER_POINT);
+		this.radius = radius;
+		this.cellSize = Math.max(radius, Math.max(size2D / Math.sqrt(maxCells), Double.MIN_NORMAL));
+		this.originX = minX;
+		this.originY = minY;
+		this.columns = (int) ((maxX - minX) / cellSize) + 1;
+		this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+		// Counting sort of the points by cell
+		int numCells = columns * rows;
+		this.cellStart = new int[numCells + 1];
+		int[] cellOf = new int[size];
+		for (int i = 0; i < size; i++) {
+			cellOf[i] = cell(column(x[i]), row(y[i]));
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < numCells; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] next = new int[numCells];
+		System.arraycopy(cellStart, 0, next, 0, numCells);
+		this.pointIndex = new int[size];
+		this.cellX = new double[size];
+		this.cellY = new double[size];
+		for (int i = 0; i < size; i++) {
+			int slot = next[cellOf[i]]++;
+			pointIndex[slot] = i;
+			cellX[slot] = x[i];
+			cellY[slot] = y[i];
+		}
+	}
+
+	public double getRadius() {
+		return radius;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get the column containing the x-coordinate. Locations outside the grid give columns outside [0, getColumns()).
+	 * @param x
+	 * @return column
+	 */
+	public int column(double x) {
+		return (int) Math.floor((x - originX) / cellSize);
+	}
+
+	/**
+	 * Get the row containing the y-coordinate. Locations outside the grid give rows outside [0, getRows()).
+	 * @param y
+	 * @return row
+	 */
+	public int row(double y) {
+		return (int) Math.floor((y - originY) / cellSize);
+	}
+
+	/**
+	 * Get the cell index of a column and row inside the grid.
+	 * @param column
+	 * @param row
+	 * @return cell
+	 */
+	public int cell(int column, int row) {
+		return row * columns + column;
+	}
+
+	/**
+	 * Get the first slot of a cell in the bucketed arrays.
+	 * @param cell
+	 * @return start
+	 */
+	public int cellStart(int cell) {
+		return cellStart[cell];
+	}
+
+	/**
+	 * Get the slot after the last slot of a cell in the bucketed arrays.
+	 * @param cell
+	 * @return end
+	 */
+	public int cellEnd(int cell) {
+		return cellStart[cell + 1];
+	}
+
+	/**
+	 * Get the store index of each bucketed point.
+	 * @return pointIndex
+	 */
+	public int[] pointIndex() {
+		return pointIndex;
+	}
+
+	/**
+	 * Get the x-coordinate of each bucketed point.
+	 * @return cellX
+	 */
+	public double[] cellX() {
+		return cellX;
+	}
+
+	/**
+	 * Get the y-coordinate of each bucketed point.
+	 * @return cellY
+	 */
+	public double[] cellY() {
+		return cellY;
+	}
+}
@@ -0,0 +1,210 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * 2-dimensional KD-tree over the points of a PointStore. The tree only stores point indices, coordinates are
+ * read from the store's columns. Levels alternate between splitting on x (even depth) and y (odd depth).
+ *
+ * The tree is built balanced once and then grows by leaf insertion as points are appended to the store.
+ */
+public class KDTree {
+	private static final int NONE = -1;
+
+	private final PointStore points;
+	// Tree nodes, node i refers to the point at index point[i] of the store
+	private int[] point, left, right;
+	private int numNodes = 0;
+	private int root = NONE;
+
+	/**
+	 * Build a balanced tree over all points currently in the store.
+	 * @param points
+	 */
+	public KDTree(PointStore points) {
+		this.points = points;
+		int size = points.size();
+		this.point = new int[Math.max(size, 16)];
+		this.left = new int[point.length];
+		this.right = new int[point.length];
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		this.root = build(order, 0, size, 0);
+	}
+
+	/**
+	 * Get the number of points in the tree.
+	 * @return size
+	 */
+	public int size() {
+		return numNodes;
+	}
+
+	/**
+	 * Insert a point of the store into the tree.
+	 * @param index - index of the point in the store
+	 */
+	public void insert(int index) {
+		int node = newNode(index);
+		if (root == NONE) {
+			root = node;
+			return;
+		}
+		double[] x = points.xs(), y = points.ys();
+		int current = root, depth = 0;
+		while (true) {
+			int splitPoint = point[current];
+			boolean goLeft = (depth & 1) == 0 ? x[index] < x[splitPoint] : y[index] < y[splitPoint];
+			int child = goLeft ? left[current] : right[current];
+			if (child == NONE) {
+				if (goLeft)
+					left[current] = node;
+				else
+					right[current] = node;
+				return;
+			}
+			current = child;
+			depth++;
+		}
+	}
+
+	/**
+	 * Find the k nearest points to (x, y). Results are written in ascending order of distance.
+	 * Points at equal distance are all kept, each in its own slot.
+	 * @param x
+	 * @param y
+	 * @param k
+	 * @param indices - receives the store indices of the neighbours, length at least k
+	 * @param squaredDistances - receives the squared distances of the neighbours, length at least k
+	 * @return number of neighbours found, min(k, size())
+	 */
+	public int nearest(double x, double y, int k, int[] indices, double[] squaredDistances) {
+		if (k <= 0)
+			return 0;
+		int found = search(root, 0, x, y, k, indices, squaredDistances, 0);
+		// Heap sort the bounded max-heap into ascending order
+		for (int end = found - 1; end > 0; end--) {
+			swap(indices, squaredDistances, 0, end);
+			siftDown(indices, squaredDistances, 0, end);
+		}
+		return found;
+	}
+
+	private int search(int node, int depth, double qx, double qy, int k, int[] heap, double[] heapDist, int heapSize) {
+		if (node == NONE)
+			return heapSize;
+		double[] x = points.xs(), y = points.ys();
+		int p = point[node];
+		double dx = qx - x[p], dy = qy - y[p];
+		double dist = dx * dx + dy * dy;
+		// Offer the point to the bounded max-heap
+		if (heapSize < k) {
+			heap[heapSize] = p;
+			heapDist[heapSize] = dist;
+			siftUp(heap, heapDist, heapSize);
+			heapSize++;
+		} else if (dist < heapDist[0]) {
+			heap[0] = p;
+			heapDist[0] = dist;
+			siftDown(heap, heapDist, 0, heapSize);
+		}
+		// Visit the side of the query first, then the other side if the splitting plane is within reach
+		double delta = (depth & 1) == 0 ? dx : dy;
+		int near = delta < 0 ? left[node] : right[node];
+		int far = delta < 0 ? right[node] : left[node];
+		heapSize = search(near, depth + 1, qx, qy, k, heap, heapDist, heapSize);
+		if (heapSize < k || delta * delta < heapDist[0])
+			heapSize = search(far, depth + 1, qx, qy, k, heap, heapDist, heapSize);
+		return heapSize;
+	}
+
+	/**
+	 * Build the subtree of order[from, to) by splitting at the median of the current axis.
+	 * @return root node of the subtree
+	 */
+	private int build(int[] order, int from, int to, int depth) {
+		if (from >= to)
+			return NONE;
+		int median = (from + to) >>> 1;
+		select(order, from, to - 1, median, (depth & 1) == 0 ? points.xs() : points.ys());
+		int node = newNode(order[median]);
+		left[node] = build(order, from, median, depth + 1);
+		right[node] = build(order, median + 1, to, depth + 1);
+		return node;
+	}
+
+	/**
+	 * Quickselect: reorder order[lo, hi] so that position k holds the element of rank k by the given coordinate,
+	 * with smaller values before it and greater or equal values after it.
+	 */
+	private static void select(int[] order, int lo, int hi, int k, double[] coordinate) {
+		while (lo < hi) {
+			double pivot = coordinate[order[(lo + hi) >>> 1]];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (coordinate[order[i]] < pivot)
+					i++;
+				while (coordinate[order[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int tmp = order[i];
+					order[i++] = order[j];
+					order[j--] = tmp;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private int newNode(int index) {
+		if (numNodes == point.length) {
+			int capacity = point.length * 2;
+			point = Arrays.copyOf(point, capacity);
+			left = Arrays.copyOf(left, capacity);
+			right = Arrays.copyOf(right, capacity);
+		}
+		point[numNodes] = index;
+		left[numNodes] = NONE;
+		right[numNodes] = NONE;
+		return numNodes++;
+	}
+
+	private static void siftUp(int[] heap, double[] heapDist, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heapDist[parent] >= heapDist[i])
+				return;
+			swap(heap, heapDist, parent, i);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, double[] heapDist, int i, int size) {
+		while (true) {
+			int largest = i, l = 2 * i + 1, r = l + 1;
+			if (l < size && heapDist[l] > heapDist[largest])
+				largest = l;
+			if (r < size && heapDist[r] > heapDist[largest])
+				largest = r;
+			if (largest == i)
+				return;
+			swap(heap, heapDist, i, largest);
+			i = largest;
+		}
+	}
+
+	private static void swap(int[] heap, double[] heapDist, int i, int j) {
+		int tmpIndex = heap[i];
+		heap[i] = heap[j];
+		heap[j] = tmpIndex;
+		double tmpDist = heapDist[i];
+		heapDist[i] = heapDist[j];
+		heapDist[j] = tmpDist;
+	}
+}
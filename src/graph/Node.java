@@ -5,7 +5,7 @@ import javafx.scene.paint.Color;
 public class Node {
 	private double x, y;
 	private String name = "";
-	private Color category = Color.BLACK;
+	private int label = NodeCategories.UNCATEGORIZED;	// Category index, the color is derived from it
 
 	public Node(double x, double y) {
 		this.x = x;
@@ -14,7 +14,12 @@ public class Node {
 	public Node(double x, double y, Color category) {
 		this.x = x;
 		this.y = y;
-		this.category = category;
+		this.label = NodeCategories.indexOf(category);
+	}
+	public Node(double x, double y, int label) {
+		this.x = x;
+		this.y = y;
+		this.label = label;
 	}
 	public Node(double x, double y, String name) {
 		this.x = x;
@@ -25,14 +30,17 @@ public class Node {
 		this.x = x;
 		this.y = y;
 		this.name = name;
-		this.category = color;
+		this.label = NodeCategories.indexOf(color);
 	}
 	
 	public void setName(String name) {
 		this.name = name;
 	}
 	public void setCategory(Color category) {
-		this.category = category;
+		this.label = NodeCategories.indexOf(category);
+	}
+	public void setLabel(int label) {
+		this.label = label;
 	}
 	
 	public String getName(String name) {
@@ -52,6 +60,9 @@ public class Node {
 		this.y = y;
 	}
 	public Color getCategory() {
-		return this.category;
+		return NodeCategories.getColor(this.label);
+	}
+	public int getLabel() {
+		return this.label;
 	}
 }
\ No newline at end of file
@@ -1,9 +1,17 @@
 package graph;
 
+import java.util.Arrays;
+
 import javafx.scene.paint.Color;
 
+/**
+ * Display colors of the category indices. The first six colors are fixed; the colors of larger indices are
+ * generated on demand by stepping the hue by the golden angle, so that neighbouring indices stay distinct.
+ */
 public class NodeCategories {
-	private static Color[] categories = {
+	public static final int UNCATEGORIZED = -1;
+	
+	private static final Color[] BASE_CATEGORIES = {
 			Color.MAGENTA,
 			Color.ORANGE,
 			Color.RED,
@@ -11,16 +19,57 @@ public class NodeCategories {
 			Color.CYAN,
 			Color.PINK
 	};
+	private static final double GOLDEN_ANGLE = 137.50776405003785;
+	
+	private static Color[] categories = BASE_CATEGORIES.clone();
 	
 	/**
-	 * Get a category color.
-	 * @return
+	 * Get a category color. Uncategorized nodes are black.
+	 * @param index - category index, UNCATEGORIZED or any non-negative integer
+	 * @return color
 	 */
-	public static Color getColor(int index) {
+	public static synchronized Color getColor(int index) {
+		if (index == UNCATEGORIZED)
+			return Color.BLACK;
+		if (index >= categories.length) {
+			int previous = categories.length;
+			categories = Arrays.copyOf(categories, Math.max(index + 1, 2 * previous));
+			for (int i = previous; i < categories.length; i++)
+				categories[i] = generate(i);
+		}
 		return categories[index];
 	}
 	
+	/**
+	 * Get the index of a category color among the colors handed out so far.
+	 * @param color
+	 * @return index - or UNCATEGORIZED if the color is not a category
+	 */
+	public static synchronized int indexOf(Color color) {
+		for (int i = 0; i < categories.length; i++) {
+			if (categories[i].equals(color))
+				return i;
+		}
+		return UNCATEGORIZED;
+	}
+	
+	/**
+	 * Get the number of fixed category colors. Larger indices get generated colors.
+	 * @return number of fixed colors
+	 */
 	public static int getSize() {
-		return categories.length;
+		return BASE_CATEGORIES.length;
+	}
+	
+	/**
+	 * Generated color of an index past the fixed colors. Saturation and brightness cycle over three levels so
+	 * that colors with close hues still differ, and stay high enough to be told apart from black.
+	 */
+	private static Color generate(int index) {
+		int n = index - BASE_CATEGORIES.length;
+		double hue = (n * GOLDEN_ANGLE) % 360;
+		double saturation = 0.95 - 0.2 * (n % 3);
+		double brightness = 0.95 - 0.15 * ((n / 3) % 3);
+		return Color.hsb(hue, saturation, brightness);
 	}
 }
@@ -0,0 +1,20 @@
+package graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of points that is read in batches, so that algorithms can work on datasets that are not held in
+ * memory. A source never runs out: it samples or restarts from the beginning as needed.
+ */
+public interface PointSource extends Closeable {
+	/**
+	 * Read the next batch of points.
+	 * @param x - receives the x-coordinates
+	 * @param y - receives the y-coordinates
+	 * @param max - number of points wanted
+	 * @return number of points read, less than max only if the source holds no points
+	 * @throws IOException
+	 */
+	public int next(double[] x, double[] y, int max) throws IOException;
+}
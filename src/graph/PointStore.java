@@ -0,0 +1,191 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the categorized points of a graph: one primitive column for each of x, y and label.
+ * The label is an index into NodeCategories, or NodeCategories.UNCATEGORIZED.
+ *
+ * The column arrays are exposed directly so that the algorithms can loop over them without allocating.
+ * Only the first size() entries of each column are valid.
+ */
+public class PointStore {
+	private double[] x, y;
+	private int[] labels;
+	private int size = 0;
+	private double minX, minY, maxX, maxY;	// Bounds of the points, valid while size > 0
+
+	public PointStore() {
+		this(1024);
+	}
+
+	public PointStore(int capacity) {
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.labels = new int[capacity];
+	}
+
+	/**
+	 * Append a point to the store.
+	 * @param x
+	 * @param y
+	 * @param label
+	 * @return index of the new point
+	 */
+	public int add(double x, double y, int label) {
+		if (size == this.x.length)
+			ensureCapacity(size * 2);
+		if (size == 0) {
+			minX = maxX = x;
+			minY = maxY = y;
+		} else {
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		this.x[size] = x;
+		this.y[size] = y;
+		this.labels[size] = label;
+		return size++;
+	}
+
+	/**
+	 * Append count points whose coordinates and labels the caller writes directly into the columns, for bulk
+	 * loaders that fill disjoint ranges in parallel. The bounds must then be widened with includeBounds().
+	 * @param count
+	 * @return index of the first new point
+	 */
+	public int extend(int count) {
+		int required = Math.addExact(size, count);
+		if (required > x.length)
+			ensureCapacity((int) Math.max(required, Math.min(Integer.MAX_VALUE - 8, x.length * 2L)));
+		if (size == 0) {
+			// No bounds yet, includeBounds() sets them
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+		}
+		int first = size;
+		size = required;
+		return first;
+	}
+
+	/**
+	 * Widen the bounds to include the given rectangle, after points were written through extend().
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 * @param maxY
+	 */
+	public void includeBounds(double minX, double minY, double maxX, double maxY) {
+		this.minX = Math.min(this.minX, minX);
+		this.minY = Math.min(this.minY, minY);
+		this.maxX = Math.max(this.maxX, maxX);
+		this.maxY = Math.max(this.maxY, maxY);
+	}
+
+	/**
+	 * Grow the columns so that they can hold at least the given number of points.
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= x.length)
+			return;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		labels = Arrays.copyOf(labels, capacity);
+	}
+
+	/**
+	 * Drop the points from the given index on. The bounds are left as they are.
+	 * @param size - new number of points, at most size()
+	 */
+	public void truncate(int size) {
+		if (size > this.size)
+			throw new IndexOutOfBoundsException("Size " + size + " out of " + this.size);
+		this.size = size;
+	}
+
+	/**
+	 * Remove all points. The columns are kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getX(int index) {
+		return x[index];
+	}
+
+	public double getY(int index) {
+		return y[index];
+	}
+
+	/**
+	 * Get the smallest x-coordinate of the points, 0 if the store is empty.
+	 * @return minX
+	 */
+	public double getMinX() {
+		return size == 0 ? 0 : minX;
+	}
+
+	/**
+	 * Get the smallest y-coordinate of the points, 0 if the store is empty.
+	 * @return minY
+	 */
+	public double getMinY() {
+		return size == 0 ? 0 : minY;
+	}
+
+	/**
+	 * Get the largest x-coordinate of the points, 0 if the store is empty.
+	 * @return maxX
+	 */
+	public double getMaxX() {
+		return size == 0 ? 0 : maxX;
+	}
+
+	/**
+	 * Get the largest y-coordinate of the points, 0 if the store is empty.
+	 * @return maxY
+	 */
+	public double getMaxY() {
+		return size == 0 ? 0 : maxY;
+	}
+
+	public int getLabel(int index) {
+		return labels[index];
+	}
+
+	public void setLabel(int index, int label) {
+		labels[index] = label;
+	}
+
+	/**
+	 * Get the x column. The array is replaced when the store grows.
+	 * @return x-coordinates
+	 */
+	public double[] xs() {
+		return x;
+	}
+
+	/**
+	 * Get the y column. The array is replaced when the store grows.
+	 * @return y-coordinates
+	 */
+	public double[] ys() {
+		return y;
+	}
+
+	/**
+	 * Get the label column. The array is replaced when the store grows.
+	 * @return labels
+	 */
+	public int[] labels() {
+		return labels;
+	}
+}
@@ -0,0 +1,39 @@
+package graph;
+
+import java.util.SplittableRandom;
+
+/**
+ * Point source that samples points of a PointStore uniformly at random, with replacement.
+ */
+public class PointStoreSource implements PointSource {
+	private final PointStore points;
+	private final SplittableRandom random;
+
+	/**
+	 * @param points
+	 * @param seed - seed of the sampling
+	 */
+	public PointStoreSource(PointStore points, long seed) {
+		this.points = points;
+		this.random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public int next(double[] x, double[] y, int max) {
+		int size = points.size();
+		if (size == 0)
+			return 0;
+		double[] xs = points.xs(), ys = points.ys();
+		for (int i = 0; i < max; i++) {
+			int index = random.nextInt(size);
+			x[i] = xs[index];
+			y[i] = ys[index];
+		}
+		return max;
+	}
+
+	@Override
+	public void close() {
+		// Nothing to release
+	}
+}
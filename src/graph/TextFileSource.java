@@ -0,0 +1,70 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Point source that streams a CSV or TSV file with one point per line, the x and y coordinates being the first
+ * two fields. Lines that do not start with two finite numbers, such as a header, are skipped and counted during the
+ * first pass. The file is read through one fixed-size buffer and again from the start when its end is reached.
+ */
+public class TextFileSource implements PointSource {
+	private final FileChannel channel;
+	private CsvLineReader reader;
+	private boolean hasPoints = false;	// Whether a full pass found any point
+	private boolean firstPass = true;
+	private long skippedLines = 0;
+
+	public TextFileSource(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.reader = new CsvLineReader(channel, 0, channel.size());
+	}
+
+	@Override
+	public int next(double[] x, double[] y, int max) throws IOException {
+		int count = 0;
+		boolean restarted = false;
+		while (count < max) {
+			if (!reader.nextLine()) {
+				// Restart from the beginning, unless a whole pass gave nothing
+				if (restarted && !hasPoints)
+					break;
+				reader = new CsvLineReader(channel, 0, channel.size());
+				restarted = true;
+				firstPass = false;
+				continue;
+			}
+			if (reader.fieldCount < 2) {
+				if (firstPass && !reader.isBlank())
+					skippedLines++;
+				continue;
+			}
+			byte[] buffer = reader.buffer();
+			x[count] = CsvLineReader.parseDouble(buffer, reader.fieldStart[0], reader.fieldEnd[0]);
+			y[count] = CsvLineReader.parseDouble(buffer, reader.fieldStart[1], reader.fieldEnd[1]);
+			if (!Double.isFinite(x[count]) || !Double.isFinite(y[count])) {
+				if (firstPass)
+					skippedLines++;	// Header, malformed line, infinite or overflowing coordinate
+				continue;
+			}
+			count++;
+			hasPoints = true;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of lines skipped during the first pass over the file, blank lines excluded.
+	 * @return skipped lines
+	 */
+	public long getSkippedLines() {
+		return skippedLines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
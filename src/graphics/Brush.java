@@ -1,30 +1,231 @@
 package graphics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import graph.Graph;
 import graph.Node;
+import graph.NodeCategories;
+import graph.PointStore;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
 public class Brush {
 	private GraphicsContext graphicsContext;
+	private static final int POINT_SIZE = 5;
+	private static final int PIXEL_THRESHOLD = 20_000;	// Points above which drawPoints rasterizes into an image
+	private static final int MAX_DENSITY_COUNTS = 1 << 24;	// Largest number of density grid counters (64 MB)
 	private double canvasWidth, canvasHeight;
+	private int densityThreshold;	// Points above which drawPoints draws a density image
+	private int densityCellSize = POINT_SIZE;
+	// Reused across frames by drawPoints
+	private int[] order = new int[0], labelStarts = new int[0];
+	private int[] pixels;
+	private WritableImage image;
 	
 	public Brush(GraphicsContext graphicsContext, double canvasWidth, double canvasHeight) {
 		this.canvasWidth = canvasWidth;
 		this.canvasHeight = canvasHeight;
 		this.graphicsContext = graphicsContext;
+		this.densityThreshold = (int) (canvasWidth * canvasHeight);
 		graphicsContext.setLineWidth(1);
 	}
 	
 	/**
-	 * Draw the given nodes list.
-	 * @param nodes
+	 * Set the number of points above which points are drawn as a density image instead of one by one.
+	 * The default is the number of pixels of the canvas.
+	 * @param densityThreshold
 	 */
-	public void drawGraph(ArrayList<Node> nodes) {
-		for (Node node : nodes) {
-			drawPoint(node.getX(), node.getY(), node.getCategory());
+	public void setDensityThreshold(int densityThreshold) {
+		this.densityThreshold = densityThreshold;
+	}
+	
+	public int getDensityThreshold() {
+		return densityThreshold;
+	}
+	
+	/**
+	 * Set the side in pixels of the density image cells, the point size by default.
+	 * @param densityCellSize
+	 */
+	public void setDensityCellSize(int densityCellSize) {
+		this.densityCellSize = densityCellSize;
+	}
+	
+	/**
+	 * Check whether the given number of points is drawn as a density image.
+	 * @param count
+	 * @return true if count is above the density threshold
+	 */
+	public boolean usesDensity(int count) {
+		return count > densityThreshold;
+	}
+	
+	/**
+	 * Create an empty density grid covering the canvas. The grid keeps a counter per cell and category, so with
+	 * many categories its cells are enlarged until the counters fit in MAX_DENSITY_COUNTS.
+	 * @param numCategories
+	 * @return density grid
+	 */
+	public DensityGrid createDensityGrid(int numCategories) {
+		int width = (int) canvasWidth, height = (int) canvasHeight;
+		int cellSize = densityCellSize;
+		while (cellSize < Math.max(width, height)
+				&& (long) ((width + cellSize - 1) / cellSize) * ((height + cellSize - 1) / cellSize) * (numCategories + 1) > MAX_DENSITY_COUNTS)
+			cellSize++;
+		return new DensityGrid(width, height, cellSize, numCategories);
+	}
+	
+	/**
+	 * Draw all nodes of the given graph.
+	 * @param graph
+	 */
+	public void drawGraph(Graph graph) {
+		PointStore points = graph.getPoints();
+		drawPoints(points.xs(), points.ys(), points.labels(), points.size());
+		Node uncategorizedNode = graph.getUncategorizedNode();
+		if (uncategorizedNode != null)
+			drawPoint(uncategorizedNode.getX(), uncategorizedNode.getY(), uncategorizedNode.getCategory());
+	}
+	
+	/**
+	 * Draw the first count points of the given columns in the color of their label.
+	 * Points are grouped by label so the fill changes once per color; above PIXEL_THRESHOLD points they are
+	 * rasterized into an image buffer that is drawn on the canvas in a single call.
+	 * @param x - x-coordinates
+	 * @param y - y-coordinates
+	 * @param labels - category index of every point, or NodeCategories.UNCATEGORIZED
+	 * @param count - number of points
+	 */
+	public void drawPoints(double[] x, double[] y, int[] labels, int count) {
+		if (usesDensity(count)) {
+			int maxLabel = -1;
+			for (int i = 0; i < count; i++)
+				maxLabel = Math.max(maxLabel, labels[i]);
+			DensityGrid density = createDensityGrid(maxLabel + 1);
+			density.addAll(x, y, labels, count);
+			drawDensity(density);
+		} else if (count > PIXEL_THRESHOLD)
+			rasterizePoints(x, y, labels, count);
+		else
+			fillPoints(x, y, labels, count);
+	}
+	
+	/**
+	 * Fill the points with one fillRect each, ordered by label with a counting sort.
+	 */
+	private void fillPoints(double[] x, double[] y, int[] labels, int count) {
+		// Labels are shifted by one so that UNCATEGORIZED gets bucket 0
+		int buckets = 1;
+		for (int i = 0; i < count; i++)
+			buckets = Math.max(buckets, labels[i] + 2);
+		if (labelStarts.length < buckets + 1)
+			labelStarts = new int[buckets + 1];
+		if (order.length < count)
+			order = new int[count];
+		Arrays.fill(labelStarts, 0, buckets + 1, 0);
+		for (int i = 0; i < count; i++)
+			labelStarts[labels[i] + 2]++;
+		for (int b = 1; b <= buckets; b++)
+			labelStarts[b] += labelStarts[b - 1];
+		for (int i = 0; i < count; i++)
+			order[labelStarts[labels[i] + 1]++] = i;
+		// labelStarts[b] now holds the end of bucket b
+		int from = 0;
+		for (int b = 0; b < buckets; b++) {
+			int to = labelStarts[b];
+			if (to == from)
+				continue;
+			graphicsContext.setFill(NodeCategories.getColor(b - 1));
+			for (int j = from; j < to; j++)
+				graphicsContext.fillRect(x[order[j]], y[order[j]], POINT_SIZE, POINT_SIZE);
+			from = to;
+		}
+	}
+	
+	/**
+	 * Write the points into an ARGB buffer the size of the canvas and draw it as one image.
+	 */
+	private void rasterizePoints(double[] x, double[] y, int[] labels, int count) {
+		int width = (int) canvasWidth, height = (int) canvasHeight;
+		clearPixels();
+		int[] palette = new int[0];
+		for (int i = 0; i < count; i++) {
+			int label = labels[i];
+			if (label + 1 >= palette.length)
+				palette = extendPalette(palette, label + 2);
+			int argb = palette[label + 1];
+			int left = Math.max(0, (int) x[i]), right = Math.min(width, (int) x[i] + POINT_SIZE);
+			int top = Math.max(0, (int) y[i]), bottom = Math.min(height, (int) y[i] + POINT_SIZE);
+			for (int row = top; row < bottom; row++) {
+				int offset = row * width;
+				for (int column = left; column < right; column++)
+					pixels[offset + column] = argb;
+			}
+		}
+		drawPixels();
+	}
+	
+	/**
+	 * Draw a density grid as one image: every non-empty cell in the color of its majority label, more opaque
+	 * the more points it holds.
+	 * @param density
+	 */
+	public void drawDensity(DensityGrid density) {
+		int width = (int) canvasWidth, height = (int) canvasHeight;
+		clearPixels();
+		int[] palette = new int[0];
+		int cellSize = density.getCellSize(), columns = density.getColumns();
+		double scale = 1 / Math.log1p(Math.max(1, density.getMaxTotal()));
+		for (int cell = 0; cell < columns * density.getRows(); cell++) {
+			int total = density.getTotal(cell);
+			if (total == 0)
+				continue;
+			int label = density.getMajority(cell);
+			if (label + 1 >= palette.length)
+				palette = extendPalette(palette, label + 2);
+			int alpha = (int) (255 * (0.3 + 0.7 * Math.log1p(total) * scale));
+			int argb = alpha << 24 | palette[label + 1] & 0xFFFFFF;
+			int left = cell % columns * cellSize, right = Math.min(width, left + cellSize);
+			int top = cell / columns * cellSize, bottom = Math.min(height, top + cellSize);
+			for (int row = top; row < bottom; row++) {
+				int offset = row * width;
+				for (int column = left; column < right; column++)
+					pixels[offset + column] = argb;
+			}
+		}
+		drawPixels();
+	}
+	
+	private void clearPixels() {
+		if (image == null) {
+			image = new WritableImage((int) canvasWidth, (int) canvasHeight);
+			pixels = new int[(int) canvasWidth * (int) canvasHeight];
+		} else {
+			Arrays.fill(pixels, 0);
+		}
+	}
+	
+	private void drawPixels() {
+		int width = (int) canvasWidth;
+		image.getPixelWriter().setPixels(0, 0, width, (int) canvasHeight, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		graphicsContext.drawImage(image, 0, 0);
+	}
+	
+	/**
+	 * Grow the ARGB palette, indexed by label + 1, to the given length.
+	 */
+	private static int[] extendPalette(int[] palette, int length) {
+		int previous = palette.length;
+		palette = Arrays.copyOf(palette, length);
+		for (int b = previous; b < length; b++) {
+			Color color = NodeCategories.getColor(b - 1);
+			palette[b] = (int) Math.round(color.getOpacity() * 255) << 24 | (int) Math.round(color.getRed() * 255) << 16
+					| (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
 		}
+		return palette;
 	}
 	
 	/**
@@ -0,0 +1,145 @@
+package graphics;
+
+import java.util.Arrays;
+
+/**
+ * Per-category point counts over a grid of canvas cells, used to draw datasets with more points than the canvas
+ * has pixels. Every cell keeps its total and its majority category; moving a point between categories updates
+ * only the cell it falls in, so a new frame costs the number of changed labels plus the number of cells.
+ */
+public class DensityGrid {
+	private final int columns, rows, cellSize, buckets;
+	private final int[] counts;		// Cell c owns [c * buckets, (c + 1) * buckets), bucket = label + 1
+	private final int[] totals;
+	private final int[] majority;	// Bucket with the most points in every cell
+	private int maxTotal = 0;
+
+	/**
+	 * @param width - canvas width in pixels
+	 * @param height - canvas height in pixels
+	 * @param cellSize - side of a cell in pixels
+	 * @param numCategories - number of categories, labels range from NodeCategories.UNCATEGORIZED to numCategories - 1
+	 */
+	public DensityGrid(int width, int height, int cellSize, int numCategories) {
+		this.cellSize = cellSize;
+		this.columns = (width + cellSize - 1) / cellSize;
+		this.rows = (height + cellSize - 1) / cellSize;
+		this.buckets = numCategories + 1;
+		this.counts = new int[Math.multiplyExact(columns * rows, buckets)];
+		this.totals = new int[columns * rows];
+		this.majority = new int[columns * rows];
+	}
+
+	/**
+	 * Remove all points.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(totals, 0);
+		Arrays.fill(majority, 0);
+		maxTotal = 0;
+	}
+
+	/**
+	 * Count the first count points of the given columns. Points outside the canvas are ignored.
+	 * @param x
+	 * @param y
+	 * @param labels
+	 * @param count
+	 */
+	public void addAll(double[] x, double[] y, int[] labels, int count) {
+		for (int i = 0; i < count; i++)
+			add(x[i], y[i], labels[i]);
+	}
+
+	/**
+	 * Get the bytes held by the counters.
+	 * @return bytes
+	 */
+	public long getRetainedBytes() {
+		return (long) Integer.BYTES * (counts.length + totals.length + majority.length);
+	}
+
+	public void add(double x, double y, int label) {
+		int cell = cell(x, y);
+		if (cell < 0)
+			return;
+		int bucket = label + 1;
+		int count = ++counts[cell * buckets + bucket];
+		maxTotal = Math.max(maxTotal, ++totals[cell]);
+		if (count > counts[cell * buckets + majority[cell]])
+			majority[cell] = bucket;
+	}
+
+	/**
+	 * Move a point from one category to another.
+	 * @param x
+	 * @param y
+	 * @param from - previous label
+	 * @param to - new label
+	 */
+	public void move(double x, double y, int from, int to) {
+		int cell = cell(x, y);
+		if (cell < 0 || from == to)
+			return;
+		int offset = cell * buckets;
+		counts[offset + from + 1]--;
+		int count = ++counts[offset + to + 1];
+		if (count > counts[offset + majority[cell]]) {
+			majority[cell] = to + 1;
+		} else if (majority[cell] == from + 1) {
+			// The majority lost a point, look for a larger category
+			for (int b = 0; b < buckets; b++) {
+				if (counts[offset + b] > counts[offset + majority[cell]])
+					majority[cell] = b;
+			}
+		}
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Get the number of points in a cell.
+	 * @param cell - row * columns + column
+	 * @return number of points
+	 */
+	public int getTotal(int cell) {
+		return totals[cell];
+	}
+
+	/**
+	 * Get the label with the most points in a cell.
+	 * @param cell - row * columns + column
+	 * @return label
+	 */
+	public int getMajority(int cell) {
+		return majority[cell] - 1;
+	}
+
+	/**
+	 * Get the largest number of points in one cell.
+	 * @return number of points
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	private int cell(double x, double y) {
+		if (x < 0 || y < 0)
+			return -1;
+		int column = (int) x / cellSize, row = (int) y / cellSize;
+		if (column >= columns || row >= rows)
+			return -1;
+		return row * columns + column;
+	}
+}
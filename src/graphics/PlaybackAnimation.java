@@ -0,0 +1,119 @@
+package graphics;
+
+import java.util.logging.Logger;
+
+import algorithms.ClusteringMetrics;
+import algorithms.Computation;
+import javafx.application.Platform;
+
+/**
+ * Animation played back by a Player. Subclasses record their frames in compute(), off the JavaFX application
+ * thread, publish them as they go and draw any published frame on request in renderFrame().
+ */
+public abstract class PlaybackAnimation implements Animation {
+	private static final Logger LOGGER = Logger.getLogger(PlaybackAnimation.class.getName());
+	private final String name;
+	private final ClusteringMetrics metrics;
+	private int framesPublished = 0;
+	protected final Player player;
+
+	/**
+	 * @param name - name of the animation used in the log messages
+	 * @param metrics - metrics of the algorithm, counts the frames built and times their drawing
+	 */
+	protected PlaybackAnimation(String name, ClusteringMetrics metrics) {
+		this.name = name;
+		this.metrics = metrics;
+		this.player = new Player(this::drawFrame, 0);
+		this.player.setRecording(true);	// Until run() returns
+	}
+
+	/**
+	 * Record the frames of the animation. Runs on a background thread; implementations publish frames with
+	 * publishFrames() and check the computation for cancellation between steps.
+	 * @param computation
+	 */
+	protected abstract void compute(Computation computation);
+
+	/**
+	 * Run compute() and mark the recording as finished when it returns, normally or not.
+	 * @param computation
+	 */
+	public final void run(Computation computation) {
+		try {
+			compute(computation);
+		} finally {
+			Platform.runLater(() -> this.player.setRecording(false));
+		}
+	}
+
+	/**
+	 * Make the first frameCount frames available to the player. Safe to call from any thread.
+	 * @param frameCount
+	 */
+	protected void publishFrames(int frameCount) {
+		synchronized (this) {
+			metrics.recordFrames(frameCount - framesPublished);
+			framesPublished = frameCount;
+		}
+		Platform.runLater(() -> this.player.setFrameCount(frameCount));
+	}
+
+	private void drawFrame(int frame) {
+		ClusteringMetrics.Phase phase = metrics.begin("render", frame);
+		renderFrame(frame);
+		phase.end(0, 0, Double.NaN);
+	}
+
+	/**
+	 * Draw the given frame.
+	 * @param frame - recorded frame, or -1 for the state before the first frame
+	 */
+	protected abstract void renderFrame(int frame);
+
+	/**
+	 * Estimate the bytes held by the recorded frames, arrays shared with the graph excluded.
+	 * @return bytes
+	 */
+	public abstract long getRetainedBytes();
+
+	public Player getPlayer() {
+		return player;
+	}
+
+	@Override
+	public void start() {
+		this.player.play();
+		LOGGER.fine(() -> "Start " + name + " animation");
+	}
+
+	@Override
+	public void pause() {
+		this.player.pause();
+		LOGGER.fine(() -> "Pause " + name + " animation");
+	}
+
+	@Override
+	public void resume() {
+		this.player.play();
+		LOGGER.fine(() -> "Resume " + name + " animation");
+	}
+
+	@Override
+	public void stop() {
+		this.player.stop();
+		LOGGER.fine(() -> "Stop " + name + " animation");
+	}
+
+	@Override
+	public void previous() {
+		this.player.previous();
+		LOGGER.fine(() -> "Previous step in " + name + " animation");
+	}
+
+	@Override
+	public void next() {
+		this.player.next();
+		LOGGER.fine(() -> "Next step in " + name + " animation");
+	}
+}
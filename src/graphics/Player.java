@@ -0,0 +1,143 @@
+package graphics;
+
+import java.util.function.IntConsumer;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Frame scheduler shared by the animations. A single AnimationTimer advances an explicit frame index at a fixed
+ * rate and asks the renderer to draw that frame from the recorded algorithm state, so seeking to any frame costs
+ * one render no matter how long the run is.
+ *
+ * Frame -1 is the state before the first frame; frames 0 to getFrameCount() - 1 are the recorded steps. While
+ * frames are still being recorded, playback waits at the last frame for more instead of pausing.
+ */
+public class Player {
+	private final IntConsumer renderer;
+	private final AnimationTimer timer;
+	private int frame = -1;
+	private int frameCount;
+	private double framesPerSecond = 1;
+	private long lastFrameTime;		// Timer time of the last rendered frame, 0 until the first pulse after play()
+	private boolean playing = false;
+	private boolean recording = false;
+
+	/**
+	 * @param renderer - draws the given frame, called on the JavaFX application thread
+	 * @param frameCount - number of frames
+	 */
+	public Player(IntConsumer renderer, int frameCount) {
+		this.renderer = renderer;
+		this.frameCount = frameCount;
+		this.timer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (lastFrameTime != 0 && now - lastFrameTime < 1e9 / framesPerSecond)
+					return;
+				if (frame + 1 >= Player.this.frameCount) {
+					if (!recording)
+						pause();
+					return;
+				}
+				lastFrameTime = now;
+				show(frame + 1);
+			}
+		};
+	}
+
+	/**
+	 * Play from the current frame, the next frame is shown immediately.
+	 */
+	public void play() {
+		if (playing)
+			return;
+		playing = true;
+		lastFrameTime = 0;
+		timer.start();
+	}
+
+	public void pause() {
+		playing = false;
+		timer.stop();
+	}
+
+	/**
+	 * Pause and go back to the state before the first frame.
+	 */
+	public void stop() {
+		pause();
+		show(-1);
+	}
+
+	/**
+	 * Pause and show the given frame.
+	 * @param frame - between -1 and getFrameCount() - 1, clamped otherwise
+	 */
+	public void seek(int frame) {
+		pause();
+		show(Math.max(-1, Math.min(frameCount - 1, frame)));
+	}
+
+	/**
+	 * Pause and show the frame after the current one.
+	 */
+	public void next() {
+		seek(frame + 1);
+	}
+
+	/**
+	 * Pause and show the frame before the current one.
+	 */
+	public void previous() {
+		seek(frame - 1);
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	public int getFrame() {
+		return frame;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Set the number of frames, for instance while they are still being recorded.
+	 * @param frameCount
+	 */
+	public void setFrameCount(int frameCount) {
+		this.frameCount = frameCount;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Set whether more frames are still to come.
+	 * @param recording
+	 */
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+	public double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Set the playback rate, one frame per second by default.
+	 * @param framesPerSecond
+	 */
+	public void setFramesPerSecond(double framesPerSecond) {
+		this.framesPerSecond = framesPerSecond;
+	}
+
+	private void show(int frame) {
+		this.frame = frame;
+		renderer.accept(frame);
+	}
+}
@@ -0,0 +1,142 @@
+package algorithms;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Distance kernels on the Java Vector API: each instruction handles as many points as the preferred vector shape
+ * holds doubles, 4 with AVX2 and 8 with AVX-512. Each metric has its own loop, with no virtual calls inside, so
+ * that the JIT compiler keeps the vectors in registers.
+ *
+ * This source folder is built and run with the jdk.incubator.vector module:
+ *   javac --add-modules jdk.incubator.vector -cp <classes> -d <classes> vector/algorithms/*.java
+ *   java --add-modules jdk.incubator.vector -cp <classes>:vector ...
+ * with META-INF/services from this folder on the class path, so that DistanceKernels finds the provider.
+ */
+public class VectorDistanceKernels implements DistanceKernelProvider {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final int MIN_VECTOR_COUNT = 4 * LANES;	// Below this the scalar loop is faster
+	private static final double[] LANE_INDEX = new double[LANES];
+	static {
+		for (int l = 0; l < LANES; l++)
+			LANE_INDEX[l] = l;
+	}
+
+	@Override
+	public DistanceKernel get(DistanceKernel.Metric metric) {
+		return LANES < 2 ? null : new Kernel(metric);	// No gain without at least two lanes
+	}
+
+	private static class Kernel implements DistanceKernel {
+		private final Metric metric;
+		private final DistanceKernel scalar;	// Single distances, loop tails and cosine nearest
+
+		Kernel(Metric metric) {
+			this.metric = metric;
+			this.scalar = DistanceKernels.scalar(metric);
+		}
+
+		@Override
+		public Metric metric() {
+			return metric;
+		}
+
+		@Override
+		public double distance(double ax, double ay, double bx, double by) {
+			return scalar.distance(ax, ay, bx, by);
+		}
+
+		@Override
+		public void distances(double qx, double qy, double[] x, double[] y, int from, int to, double[] out) {
+			DoubleVector vqx = DoubleVector.broadcast(SPECIES, qx), vqy = DoubleVector.broadcast(SPECIES, qy);
+			int upper = from + SPECIES.loopBound(to - from);
+			int i = from;
+			switch (metric) {
+			case EUCLIDEAN:
+				for (; i < upper; i += LANES) {
+					DoubleVector dx = vqx.sub(DoubleVector.fromArray(SPECIES, x, i));
+					DoubleVector dy = vqy.sub(DoubleVector.fromArray(SPECIES, y, i));
+					dx.mul(dx).add(dy.mul(dy)).lanewise(VectorOperators.SQRT).intoArray(out, i - from);
+				}
+				break;
+			case SQUARED_EUCLIDEAN:
+				for (; i < upper; i += LANES) {
+					DoubleVector dx = vqx.sub(DoubleVector.fromArray(SPECIES, x, i));
+					DoubleVector dy = vqy.sub(DoubleVector.fromArray(SPECIES, y, i));
+					dx.mul(dx).add(dy.mul(dy)).intoArray(out, i - from);
+				}
+				break;
+			case MANHATTAN:
+				for (; i < upper; i += LANES) {
+					DoubleVector dx = vqx.sub(DoubleVector.fromArray(SPECIES, x, i));
+					DoubleVector dy = vqy.sub(DoubleVector.fromArray(SPECIES, y, i));
+					dx.abs().add(dy.abs()).intoArray(out, i - from);
+				}
+				break;
+			default:
+				double queryNorm = qx * qx + qy * qy;
+				for (; i < upper; i += LANES) {
+					DoubleVector px = DoubleVector.fromArray(SPECIES, x, i), py = DoubleVector.fromArray(SPECIES, y, i);
+					DoubleVector norms = px.mul(px).add(py.mul(py)).mul(queryNorm).lanewise(VectorOperators.SQRT);
+					DoubleVector dot = vqx.mul(px).add(vqy.mul(py));
+					DoubleVector cosine = DoubleVector.broadcast(SPECIES, 1).sub(dot.div(norms));
+					cosine.blend(1, norms.eq(0)).intoArray(out, i - from);
+				}
+			}
+			for (; i < to; i++)
+				out[i - from] = scalar.distance(qx, qy, x[i], y[i]);
+		}
+
+		@Override
+		public int nearest(double qx, double qy, double[] x, double[] y, int count) {
+			if (metric == Metric.COSINE || count < MIN_VECTOR_COUNT)
+				return scalar.nearest(qx, qy, x, y, count);
+			boolean manhattan = metric == Metric.MANHATTAN;
+			DoubleVector vqx = DoubleVector.broadcast(SPECIES, qx), vqy = DoubleVector.broadcast(SPECIES, qy);
+			int upper = SPECIES.loopBound(count);
+			// First pass: the smallest distance of every lane, squared distances being enough to compare. Four
+			// accumulators keep four independent min chains in flight.
+			DoubleVector best0 = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+			DoubleVector best1 = best0, best2 = best0, best3 = best0;
+			int i = 0;
+			for (; i + 4 * LANES <= upper; i += 4 * LANES) {
+				best0 = best0.min(lanes(manhattan, vqx, vqy, x, y, i));
+				best1 = best1.min(lanes(manhattan, vqx, vqy, x, y, i + LANES));
+				best2 = best2.min(lanes(manhattan, vqx, vqy, x, y, i + 2 * LANES));
+				best3 = best3.min(lanes(manhattan, vqx, vqy, x, y, i + 3 * LANES));
+			}
+			for (; i < upper; i += LANES)
+				best0 = best0.min(lanes(manhattan, vqx, vqy, x, y, i));
+			double minDist = best0.min(best1).min(best2.min(best3)).reduceLanes(VectorOperators.MIN);
+			if (Double.isNaN(minDist))
+				return scalar.nearest(qx, qy, x, y, count);	// The scalar loop skips NaN distances
+			// The tail may hold a smaller distance
+			int nearest = -1;
+			for (i = upper; i < count; i++) {
+				double dx = qx - x[i], dy = qy - y[i];
+				double dist = manhattan ? Math.abs(dx) + Math.abs(dy) : dx * dx + dy * dy;
+				if (dist < minDist) {
+					minDist = dist;
+					nearest = i;
+				}
+			}
+			if (nearest >= 0)
+				return nearest;
+			// Second pass: the first block holding the smallest distance, the distances being computed identically
+			for (i = 0; i < upper; i += LANES) {
+				int lane = lanes(manhattan, vqx, vqy, x, y, i).eq(minDist).firstTrue();
+				if (lane < LANES)
+					return i + lane;
+			}
+			return 0;
+		}
+
+		private static DoubleVector lanes(boolean manhattan, DoubleVector qx, DoubleVector qy, double[] x, double[] y, int i) {
+			DoubleVector dx = qx.sub(DoubleVector.fromArray(SPECIES, x, i));
+			DoubleVector dy = qy.sub(DoubleVector.fromArray(SPECIES, y, i));
+			return manhattan ? dx.abs().add(dy.abs()) : dx.mul(dx).add(dy.mul(dy));
+		}
+	}
+}